@@ -3,6 +3,7 @@ package org.libreoffice;
 
 import android.graphics.Bitmap;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.view.KeyEvent;
 import org.mozilla.gecko.gfx.CairoImage;
 import org.mozilla.gecko.gfx.IntSize;
@@ -44,6 +45,11 @@ public interface TileProvider {
 
     boolean isReady();
 
+    /**
+     * Returns the edge length of the square tiles in pixels, chosen for the device and document.
+     */
+    int getTileSize();
+
     CairoImage createTile(float x, float y, IntSize tileSize, float zoom);
 
     /**
@@ -51,6 +57,12 @@ public interface TileProvider {
      */
     void rerenderTile(CairoImage image, float x, float y, IntSize tileSize, float zoom);
 
+    /**
+     * Render only a part of a tile. The returned image has the size of the part rect, which is
+     * given in pixels relative to the tile origin.
+     */
+    CairoImage createTilePart(float x, float y, IntSize tileSize, float zoom, Rect partRect);
+
     /**
      * Change the document part to the one specified by the partIndex input parameter.
      *
@@ -9,4 +9,7 @@ public class CustomConstant {
     public final static String PACKAGE_NAME = TheApplication.getContext().getPackageName();//通过应用传入的context
     public static final String ENABLE_EXPERIMENTAL_PREFS_KEY = "ENABLE_EXPERIMENTAL";
     public static final String ENABLE_DEVELOPER_PREFS_KEY = "ENABLE_DEVELOPER";
+    public static final String ENABLE_TILE_CACHE_PREFS_KEY = "ENABLE_TILE_CACHE";
+    public static final String LOW_MEMORY_TILES_PREFS_KEY = "LOW_MEMORY_TILES";
+    public static final String EXPORT_RENDER_METRICS_PREFS_KEY = "EXPORT_RENDER_METRICS";
 }
@@ -1,11 +1,13 @@
 package org.libreoffice.application;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import androidx.multidex.MultiDexApplication;
 import org.libreoffice.BuildConfig;
+import org.libreoffice.kit.DirectBufferAllocator;
 import org.libreoffice.kit.LibreOfficeKit;
 import org.libreoffice.manager.AssetsManager;
 
@@ -28,6 +30,7 @@ public class TheApplication extends MultiDexApplication {
         super.onCreate();
         sInstance = this;
         LibreOfficeKit.initializeLibrary();
+        setupBufferLimits();
         sPrefs = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
         if (sPrefs.getInt(ASSETS_EXTRACTED_PREFS_KEY, 0) != BuildConfig.VERSION_CODE) {
             if(AssetsManager.copyFromAssets(getAssets(), "unpack", getApplicationInfo().dataDir)) {
@@ -36,6 +39,16 @@ public class TheApplication extends MultiDexApplication {
         }
     }
 
+    /**
+     * Limit the direct buffers used for tiles to half of the heap the device gives us,
+     * and keep up to 1/16 of it pooled for reuse.
+     */
+    private void setupBufferLimits() {
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClassBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+        DirectBufferAllocator.setLimits(memoryClassBytes / 2, memoryClassBytes / 16);
+    }
+
     public static TheApplication getApplication() {
         return sInstance;
     }
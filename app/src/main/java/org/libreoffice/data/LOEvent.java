@@ -37,10 +37,22 @@ public class LOEvent implements Comparable<LOEvent> {
     public static final int SAVE_COPY_AS = 24;
     public static final int DOCUMENT_CHANGED = 25;
     public static final int SAVE_PASSWORD = 26;
+    public static final int TRIM_MEMORY = 27;
 
+    /*
+     * Priorities used by LOKitThread to order the event queue, lower values are processed first.
+     * Input and document commands share the highest priority so their relative order is kept.
+     */
+    public static final int PRIORITY_INPUT = 0;
+    public static final int PRIORITY_TILE_INVALIDATION = 1;
+    public static final int PRIORITY_TILE_REEVALUATION = 2;
+    public static final int PRIORITY_THUMBNAIL = 3;
 
     public final int mType;
     public int mPriority = 0;
+    public long mSequence;
+    /* System.nanoTime when the event was queued, for the queue wait metric. */
+    public long mQueueTime;
     private String mTypeString;
 
     public ThumbnailCreator.ThumbnailCreationTask mTask;
@@ -58,19 +70,31 @@ public class LOEvent implements Comparable<LOEvent> {
     public int mPageWidth;
     public int mPageHeight;
     public boolean mNotify;
+    public int mTrimLevel;
 
     public LOEvent(int type) {
         mType = type;
+        mPriority = getDefaultPriority(type);
     }
 
     public LOEvent(int type, ComposedTileLayer composedTileLayer) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Tile Reevaluation";
         mComposedTileLayer = composedTileLayer;
     }
 
+    public LOEvent(int type, ComposedTileLayer composedTileLayer, int trimLevel) {
+        mType = type;
+        mPriority = getDefaultPriority(type);
+        mTypeString = "Trim Memory";
+        mComposedTileLayer = composedTileLayer;
+        mTrimLevel = trimLevel;
+    }
+
     public LOEvent(int type, String someString) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "String";
         mString = someString;
         mValue = null;
@@ -78,6 +102,7 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(int type, String someString, boolean notify) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "String";
         mString = someString;
         mValue = null;
@@ -86,6 +111,7 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(int type, String someString, String value, boolean notify) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "String";
         mString = someString;
         mValue = value;
@@ -94,6 +120,7 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(int type, String key, String value) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "key / value";
         mString = key;
         mValue = value;
@@ -101,12 +128,14 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(String filePath, int type) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Load";
         this.filePath = filePath;
     }
 
     public LOEvent(String filePath, String fileType, int type) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Load New/Save As";
         this.filePath = filePath;
         this.fileType = fileType;
@@ -114,18 +143,21 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(int type, int partIndex) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mPartIndex = partIndex;
         mTypeString = "Change part";
     }
 
     public LOEvent(int type, ThumbnailCreator.ThumbnailCreationTask task) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTask = task;
         mTypeString = "Thumbnail";
     }
 
     public LOEvent(int type, String touchType, PointF documentTouchCoordinate) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Touch";
         mTouchType = touchType;
         mDocumentCoordinate = documentTouchCoordinate;
@@ -133,28 +165,48 @@ public class LOEvent implements Comparable<LOEvent> {
 
     public LOEvent(int type, KeyEvent keyEvent) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Key Event";
         mKeyEvent = keyEvent;
     }
 
     public LOEvent(int type, RectF rect) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mTypeString = "Tile Invalidation";
         mInvalidationRect = rect;
     }
 
     public LOEvent(int type, SelectionHandle.HandleType handleType, PointF documentCoordinate) {
         mType = type;
+        mPriority = getDefaultPriority(type);
         mHandleType = handleType;
         mDocumentCoordinate = documentCoordinate;
     }
 
     public LOEvent(int type, int pageWidth, int pageHeight){
         mType = type;
+        mPriority = getDefaultPriority(type);
         mPageWidth = pageWidth;
         mPageHeight = pageHeight;
     }
 
+    /**
+     * Returns the queue priority of the event type, see PRIORITY_* constants.
+     */
+    private static int getDefaultPriority(int type) {
+        switch (type) {
+            case TILE_INVALIDATION:
+                return PRIORITY_TILE_INVALIDATION;
+            case TILE_REEVALUATION_REQUEST:
+                return PRIORITY_TILE_REEVALUATION;
+            case THUMBNAIL:
+                return PRIORITY_THUMBNAIL;
+            default:
+                return PRIORITY_INPUT;
+        }
+    }
+
     public String getTypeString() {
         if (mTypeString == null) {
             return "Event type: " + mType;
@@ -164,7 +216,11 @@ public class LOEvent implements Comparable<LOEvent> {
 
     @Override
     public int compareTo(LOEvent another) {
-        return mPriority - another.mPriority;
+        if (mPriority != another.mPriority) {
+            return mPriority - another.mPriority;
+        }
+        // FIFO within the same priority
+        return Long.compare(mSequence, another.mSequence);
     }
 
 }
@@ -1,28 +1,89 @@
 package org.libreoffice.kit;
 
+import android.util.Log;
+
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * This is the common code for allocation and freeing of memory. For this direct ByteBuffer is used but
  * in the past it was possible to use a JNI version of allocation because of a bug in old Android version.
+ *
+ * Large buffers (tile images) are recycled: freed buffers are kept in a bounded pool of power-of-two
+ * size classes and handed out again by the next allocation of the same class, so rendering tiles
+ * doesn't churn memory and the GC. The allocator accounts the bytes handed out and refuses
+ * allocations above a hard cap. Only the buffers it handed out are taken back, freeing any other
+ * buffer or the same buffer twice is logged and ignored.
  */
 public final class DirectBufferAllocator {
+    private static final String LOGTAG = DirectBufferAllocator.class.getSimpleName();
+    /* Buffers smaller than this are not pooled. */
+    private static final int MIN_POOLED_SIZE = 64 * 1024;
+
+    private static final HashMap<Integer, ArrayDeque<ByteBuffer>> sPool = new HashMap<Integer, ArrayDeque<ByteBuffer>>();
+    /* The pooled size buffers which are handed out and not freed yet. */
+    private static final Set<ByteBuffer> sHandedOut = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+    private static long sMaxBytesInUse = 256L * 1024 * 1024;
+    private static long sMaxPooledBytes = 16L * 1024 * 1024;
+    private static long sBytesInUse = 0;
+    private static long sHighWaterMark = 0;
+    private static long sPooledBytes = 0;
 
     private DirectBufferAllocator() {
     }
 
     public static ByteBuffer allocate(int size) {
-        ByteBuffer directBuffer = ByteBuffer.allocateDirect(size);
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid allocation size: " + size);
+        }
+        if (size < MIN_POOLED_SIZE) {
+            return allocateDirect(size);
+        }
+
+        int sizeClass = getSizeClass(size);
+        ByteBuffer directBuffer;
+        synchronized (DirectBufferAllocator.class) {
+            if (sBytesInUse + sizeClass > sMaxBytesInUse) {
+                throw new OutOfMemoryError("Direct buffer limit of " + sMaxBytesInUse + " bytes reached");
+            }
+            ArrayDeque<ByteBuffer> buffers = sPool.get(sizeClass);
+            directBuffer = buffers == null ? null : buffers.poll();
+            if (directBuffer != null) {
+                sPooledBytes -= sizeClass;
+            }
+            sBytesInUse += sizeClass;
+            sHighWaterMark = Math.max(sHighWaterMark, sBytesInUse);
+        }
+
         if (directBuffer == null) {
-            if (size <= 0) {
-                throw new IllegalArgumentException("Invalid allocation size: " + size);
-            } else {
-                throw new OutOfMemoryError("allocateDirectBuffer() returned null");
+            try {
+                directBuffer = allocateDirect(sizeClass);
+            } catch (OutOfMemoryError error) {
+                synchronized (DirectBufferAllocator.class) {
+                    sBytesInUse -= sizeClass;
+                }
+                throw error;
             }
+        }
+        directBuffer.limit(size);
+        synchronized (DirectBufferAllocator.class) {
+            sHandedOut.add(directBuffer);
+        }
+        return directBuffer;
+    }
+
+    private static ByteBuffer allocateDirect(int size) {
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(size);
+        if (directBuffer == null) {
+            throw new OutOfMemoryError("allocateDirectBuffer() returned null");
         } else if (!directBuffer.isDirect()) {
             throw new AssertionError("allocateDirectBuffer() did not return a direct buffer");
         }
-
         return directBuffer;
     }
 
@@ -34,7 +95,32 @@ public final class DirectBufferAllocator {
         if (!buffer.isDirect()) {
             throw new IllegalArgumentException("ByteBuffer must be direct");
         }
-        // can't free buffer - leave this to the VM
+
+        int sizeClass = buffer.capacity();
+        if (sizeClass < MIN_POOLED_SIZE) {
+            // not allocated by the pool - leave this to the VM
+            return null;
+        }
+
+        synchronized (DirectBufferAllocator.class) {
+            if (!sHandedOut.remove(buffer)) {
+                Log.e(LOGTAG, "Ignoring free of a buffer of " + sizeClass + " bytes which is not allocated");
+                return null;
+            }
+            sBytesInUse -= sizeClass;
+            if (sPooledBytes + sizeClass <= sMaxPooledBytes) {
+                buffer.clear();
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                ArrayDeque<ByteBuffer> buffers = sPool.get(sizeClass);
+                if (buffers == null) {
+                    buffers = new ArrayDeque<ByteBuffer>();
+                    sPool.put(sizeClass, buffers);
+                }
+                buffers.push(buffer);
+                sPooledBytes += sizeClass;
+            }
+            // else: can't free buffer - leave this to the VM
+        }
         return null;
     }
 
@@ -47,4 +133,57 @@ public final class DirectBufferAllocator {
         }
         return buffer;
     }
+
+    /**
+     * Set the hard cap of bytes handed out by the allocator and the maximum number of bytes
+     * kept in the pool for reuse.
+     */
+    public static synchronized void setLimits(long maxBytesInUse, long maxPooledBytes) {
+        sMaxBytesInUse = maxBytesInUse;
+        sMaxPooledBytes = maxPooledBytes;
+        trimPool(maxPooledBytes);
+    }
+
+    /**
+     * Drop pooled buffers until at most maxPooledBytes are retained.
+     * @return number of bytes released to the VM.
+     */
+    public static synchronized long trimPool(long maxPooledBytes) {
+        long released = 0;
+        for (ArrayDeque<ByteBuffer> buffers : sPool.values()) {
+            while (sPooledBytes > maxPooledBytes && !buffers.isEmpty()) {
+                int sizeClass = buffers.pop().capacity();
+                sPooledBytes -= sizeClass;
+                released += sizeClass;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Bytes currently handed out by the pooled allocator.
+     */
+    public static synchronized long getBytesInUse() {
+        return sBytesInUse;
+    }
+
+    /**
+     * Highest value of bytes in use since start.
+     */
+    public static synchronized long getHighWaterMark() {
+        return sHighWaterMark;
+    }
+
+    /**
+     * Bytes retained in the pool for reuse.
+     */
+    public static synchronized long getPooledBytes() {
+        return sPooledBytes;
+    }
+
+    /* Returns the power of two that is greater than or equal to size */
+    private static int getSizeClass(int size) {
+        int highestOneBit = Integer.highestOneBit(size);
+        return highestOneBit == size ? size : highestOneBit << 1;
+    }
 }
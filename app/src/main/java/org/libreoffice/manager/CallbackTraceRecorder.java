@@ -0,0 +1,138 @@
+package org.libreoffice.manager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Records the callbacks LOKit sends to the InvalidationHandler (message ids and payloads) into a
+ * compact binary trace, so pathological documents can be replayed offline by the
+ * CallbackTraceReplayer. The trace is written through a buffer on the callback thread.
+ *
+ * Trace format: MAGIC and VERSION (4 bytes each, big endian), then the messages, each as
+ * unsigned varints: the microseconds since the previous message, the message id and the length
+ * of the UTF-8 payload plus one (0 for a null payload), followed by the payload bytes.
+ */
+public class CallbackTraceRecorder {
+    static final int MAGIC = 0x4c4f4342; // "LOCB"
+    static final int VERSION = 1;
+
+    private final File mFile;
+    private final OutputStream mOutput;
+    private final long mStartNanos = System.nanoTime();
+    private long mLastMicros;
+    private int mMessageCount;
+    private boolean mClosed;
+    private IOException mError;
+
+    public CallbackTraceRecorder(File file) throws IOException {
+        mFile = file;
+        mOutput = new BufferedOutputStream(new FileOutputStream(file), 16 * 1024);
+        writeInt(MAGIC);
+        writeInt(VERSION);
+    }
+
+    public synchronized void record(int messageID, String payload) {
+        // a callback may still arrive after the recording was stopped
+        if (mClosed || mError != null) {
+            return;
+        }
+        long micros = (System.nanoTime() - mStartNanos) / 1000;
+        try {
+            writeVarint(micros - mLastMicros);
+            writeVarint(messageID & 0xffffffffL);
+            if (payload == null) {
+                writeVarint(0);
+            } else {
+                byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length + 1L);
+                mOutput.write(bytes);
+            }
+            mLastMicros = micros;
+            mMessageCount++;
+        } catch (IOException e) {
+            // keep the messages written so far, close reports the error
+            mError = e;
+        }
+    }
+
+    public synchronized int getMessageCount() {
+        return mMessageCount;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Flush and close the trace.
+     * @throws IOException if writing a message or closing failed
+     */
+    public synchronized void close() throws IOException {
+        mClosed = true;
+        try {
+            mOutput.close();
+        } finally {
+            if (mError != null) {
+                throw mError;
+            }
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        mOutput.write(value >>> 24);
+        mOutput.write(value >>> 16);
+        mOutput.write(value >>> 8);
+        mOutput.write(value);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            mOutput.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mOutput.write((int) value);
+    }
+
+    static int readInt(InputStream input) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | readByte(input);
+        }
+        return value;
+    }
+
+    /**
+     * Read an unsigned varint.
+     * @return the value, -1 at the end of the trace
+     */
+    static long readVarint(InputStream input) throws IOException {
+        int b = input.read();
+        if (b < 0) {
+            return -1;
+        }
+        long value = b & 0x7f;
+        int shift = 7;
+        while ((b & 0x80) != 0) {
+            if (shift > 56) {
+                throw new IOException("Invalid varint in callback trace");
+            }
+            b = readByte(input);
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    static int readByte(InputStream input) throws IOException {
+        int b = input.read();
+        if (b < 0) {
+            throw new IOException("Truncated callback trace");
+        }
+        return b;
+    }
+}
@@ -0,0 +1,588 @@
+package org.libreoffice.manager;
+
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.view.Choreographer;
+
+import org.libreoffice.application.TheApplication;
+import org.libreoffice.callback.EventCallback;
+import org.libreoffice.canvas.SelectionHandle;
+import org.libreoffice.data.LOEvent;
+import org.libreoffice.kit.Document;
+import org.libreoffice.overlay.CalcHeadersController;
+import org.libreoffice.overlay.CalcHeadersView;
+import org.libreoffice.overlay.DocumentOverlay;
+import org.libreoffice.ui.MainActivity;
+import org.mozilla.gecko.gfx.GeckoLayerClient;
+import org.mozilla.gecko.gfx.ImmutableViewportMetrics;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a trace of a CallbackTraceRecorder through an InvalidationHandler of its own, to find
+ * out what the callback storms of pathological documents cost. The handler draws on a stand-in
+ * overlay, moves the viewport of a stand-in layer client and updates stand-in controls, which
+ * only count the calls, and its events are counted instead of being sent to the LOKit thread. So
+ * the replay neither calls LOKit nor changes the UI of the activity. It reports the CPU time of
+ * the handler, the events it queued and the UI posts it caused, per message type as well.
+ *
+ * Messages which are only handled through the activity (opening hyperlinks, password prompts,
+ * saving and renaming parts, marking the document modified) are skipped. The UI posts are the
+ * overlay and control calls plus the posts of the handler and its invalidation coalescer to the
+ * UI thread.
+ *
+ * Create it on the UI thread, which the document type is read on. The replay must not be run on
+ * the UI thread, which the coalesced invalidations are flushed on.
+ */
+public class CallbackTraceReplayer {
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    private final MainActivity mContext;
+    private final boolean mTextDocument;
+    private final boolean mSpreadsheet;
+    private final boolean mPresentation;
+    private boolean mRealTime = true;
+
+    public CallbackTraceReplayer(MainActivity context) {
+        mContext = context;
+        LOKitTileProvider tileProvider = context.getTileProvider();
+        mTextDocument = tileProvider.isTextDocument();
+        mSpreadsheet = tileProvider.isSpreadsheet();
+        mPresentation = tileProvider.isPresentation();
+    }
+
+    /**
+     * Replay the messages at the pace they were recorded (the default), so the invalidations are
+     * coalesced as in the app, or as fast as possible.
+     */
+    public void setRealTime(boolean realTime) {
+        mRealTime = realTime;
+    }
+
+    public Report replay(File traceFile) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(traceFile));
+        try {
+            if (CallbackTraceRecorder.readInt(input) != CallbackTraceRecorder.MAGIC) {
+                throw new IOException("Not a callback trace: " + traceFile);
+            }
+            int version = CallbackTraceRecorder.readInt(input);
+            if (version != CallbackTraceRecorder.VERSION) {
+                throw new IOException("Unsupported callback trace version " + version);
+            }
+            return replay(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private Report replay(InputStream input) throws IOException {
+        Report report = new Report();
+        CountingCallback callback = new CountingCallback();
+        CountingOverlay overlay = new CountingOverlay();
+        CountingLayerClient layerClient = new CountingLayerClient(mContext, callback,
+                mContext.getLayerClient().getViewportMetrics());
+        CountingControls controls = new CountingControls(mTextDocument, mSpreadsheet, mPresentation);
+        CountingHandler mainHandler = new CountingHandler();
+        InvalidationHandler handler = new InvalidationHandler(mContext, callback, overlay, layerClient, controls,
+                mainHandler);
+
+        long startNanos = System.nanoTime();
+        long traceMicros = 0;
+        long delta;
+        while ((delta = CallbackTraceRecorder.readVarint(input)) >= 0) {
+            traceMicros += delta;
+            int messageID = (int) CallbackTraceRecorder.readVarint(input);
+            String payload = readPayload(input);
+            report.messageCount++;
+            if (isSkipped(messageID, payload)) {
+                report.skippedCount++;
+                continue;
+            }
+            if (mRealTime) {
+                waitUntil(startNanos + traceMicros * 1000);
+            }
+            long startCpu = Debug.threadCpuTimeNanos();
+            long startWall = System.nanoTime();
+            handler.messageRetrieved(messageID, payload);
+            long cpu = Debug.threadCpuTimeNanos() - startCpu;
+            long wall = System.nanoTime() - startWall;
+            report.handlerCpuNanos += cpu;
+            report.handlerWallNanos += wall;
+            report.getMessageStats(messageID).add(cpu, wall);
+        }
+        report.traceMicros = traceMicros;
+        awaitNextFrame();
+
+        report.mainHandlerPosts = mainHandler.mPosts.get();
+
+        report.overlayCalls = overlay.mCalls;
+        report.controlCalls = controls.mCalls;
+        report.textSelectionReads = controls.mTextSelectionReads;
+        report.viewportMoves = layerClient.mMoves;
+        report.eventsQueued = callback.mEvents.get();
+        report.tileInvalidations = callback.mTileInvalidations.get();
+        InvalidationCoalescer coalescer = handler.getInvalidationCoalescer();
+        report.rawInvalidations = coalescer.getRawInvalidationCount();
+        report.mergedInvalidations = coalescer.getMergedInvalidationCount();
+        return report;
+    }
+
+    private static String readPayload(InputStream input) throws IOException {
+        long length = CallbackTraceRecorder.readVarint(input);
+        if (length < 0) {
+            throw new IOException("Truncated callback trace");
+        }
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        int read = 0;
+        while (read < bytes.length) {
+            int count = input.read(bytes, read, bytes.length - read);
+            if (count < 0) {
+                throw new IOException("Truncated callback trace");
+            }
+            read += count;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSkipped(int messageID, String payload) {
+        switch (messageID) {
+            case Document.CALLBACK_HYPERLINK_CLICKED:
+            case Document.CALLBACK_DOCUMENT_PASSWORD:
+            case Document.CALLBACK_DOCUMENT_PASSWORD_TO_MODIFY:
+            case Document.CALLBACK_UNO_COMMAND_RESULT:
+                return true;
+            case Document.CALLBACK_STATE_CHANGED:
+                return payload != null && payload.startsWith(".uno:ModifiedStatus=");
+            default:
+                return false;
+        }
+    }
+
+    private static void waitUntil(long nanos) {
+        long millis = (nanos - System.nanoTime()) / 1000000;
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait for the coalesced invalidations to be flushed. The frame callbacks run in the order
+     * they were posted, so the coalescer has flushed when ours runs.
+     */
+    private static void awaitNextFrame() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TheApplication.getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        try {
+            latch.await(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class MessageStats {
+        public int count;
+        public long cpuNanos;
+        public long wallNanos;
+
+        void add(long cpu, long wall) {
+            count++;
+            cpuNanos += cpu;
+            wallNanos += wall;
+        }
+    }
+
+    public static class Report {
+        /* The statistics of the replayed messages, by message id */
+        public final Map<Integer, MessageStats> messageStats = new TreeMap<Integer, MessageStats>();
+        public int messageCount;
+        public int skippedCount;
+        public long traceMicros;
+        public long handlerCpuNanos;
+        public long handlerWallNanos;
+        public int eventsQueued;
+        public int tileInvalidations;
+        public long rawInvalidations;
+        public long mergedInvalidations;
+        public int overlayCalls;
+        public int controlCalls;
+        /* Reads of the selected text, each a LOKit call on the callback thread in the app */
+        public int textSelectionReads;
+        public long mainHandlerPosts;
+        public int viewportMoves;
+
+        MessageStats getMessageStats(int messageID) {
+            MessageStats stats = messageStats.get(messageID);
+            if (stats == null) {
+                stats = new MessageStats();
+                messageStats.put(messageID, stats);
+            }
+            return stats;
+        }
+
+        public long getUiPostCount() {
+            return overlayCalls + controlCalls + mainHandlerPosts;
+        }
+
+        public float getUiPostsPerSecond() {
+            return perSecond(getUiPostCount());
+        }
+
+        public float getEventsPerSecond() {
+            return perSecond(eventsQueued);
+        }
+
+        /**
+         * Returns the share of the trace duration the handler spent on the CPU.
+         */
+        public float getHandlerCpuFraction() {
+            return traceMicros > 0 ? handlerCpuNanos / (traceMicros * 1000f) : 0;
+        }
+
+        private float perSecond(long count) {
+            return traceMicros > 0 ? count * 1000000f / traceMicros : 0;
+        }
+
+        /**
+         * Write the statistics as CSV, one line per message type.
+         */
+        public void writeCsv(File file) throws IOException {
+            PrintWriter writer = new PrintWriter(new FileWriter(file));
+            try {
+                writer.println("message_id,count,cpu_us,wall_us");
+                for (Map.Entry<Integer, MessageStats> entry : messageStats.entrySet()) {
+                    MessageStats stats = entry.getValue();
+                    writer.println(entry.getKey() + "," + stats.count + "," + stats.cpuNanos / 1000
+                            + "," + stats.wallNanos / 1000);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return messageCount + " messages (" + skippedCount + " skipped) in " + traceMicros / 1000
+                    + " ms, handler CPU " + handlerCpuNanos / 1000000 + " ms ("
+                    + Math.round(getHandlerCpuFraction() * 100) + "%), " + eventsQueued + " events ("
+                    + tileInvalidations + " tile invalidations of " + rawInvalidations + " raw), "
+                    + getUiPostCount() + " UI posts (" + Math.round(getUiPostsPerSecond()) + "/s), "
+                    + viewportMoves + " viewport moves, " + textSelectionReads + " selection reads";
+        }
+    }
+
+    /**
+     * Counts the events of the handler instead of sending them to the LOKit thread. Called on the
+     * replaying thread and, for the coalesced invalidations, on the UI thread.
+     */
+    private static class CountingCallback implements EventCallback {
+        private final AtomicInteger mEvents = new AtomicInteger();
+        private final AtomicInteger mTileInvalidations = new AtomicInteger();
+
+        @Override
+        public void queueEvent(LOEvent event) {
+            mEvents.incrementAndGet();
+            if (event.mType == LOEvent.TILE_INVALIDATION) {
+                mTileInvalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Posts to the UI thread like the main handler and counts the posts.
+     */
+    private static class CountingHandler extends Handler {
+        private final AtomicLong mPosts = new AtomicLong();
+
+        CountingHandler() {
+            super(Looper.getMainLooper());
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            mPosts.incrementAndGet();
+            return super.sendMessageAtTime(msg, uptimeMillis);
+        }
+    }
+
+    /**
+     * Counts the calls of the handler, each of which is a UI post of the real overlay.
+     */
+    private static class CountingOverlay extends DocumentOverlay {
+        private int mCalls;
+
+        @Override
+        public void setPartPageRectangles(List<RectF> rectangles) {
+        }
+
+        @Override
+        public void showCursor() {
+            mCalls++;
+        }
+
+        @Override
+        public void hideCursor() {
+            mCalls++;
+        }
+
+        @Override
+        public void showPageNumberRect() {
+            mCalls++;
+        }
+
+        @Override
+        public void hidePageNumberRect() {
+            mCalls++;
+        }
+
+        @Override
+        public void positionCursor(RectF position) {
+            mCalls++;
+        }
+
+        @Override
+        public void showSelections() {
+            mCalls++;
+        }
+
+        @Override
+        public void hideSelections() {
+            mCalls++;
+        }
+
+        @Override
+        public void changeSelections(List<RectF> selections) {
+            mCalls++;
+        }
+
+        @Override
+        public void showGraphicSelection() {
+            mCalls++;
+        }
+
+        @Override
+        public void hideGraphicSelection() {
+            mCalls++;
+        }
+
+        @Override
+        public void changeGraphicSelection(RectF rectangle) {
+            mCalls++;
+        }
+
+        @Override
+        public void showHandle(SelectionHandle.HandleType type) {
+            mCalls++;
+        }
+
+        @Override
+        public void hideHandle(SelectionHandle.HandleType type) {
+            mCalls++;
+        }
+
+        @Override
+        public void positionHandle(SelectionHandle.HandleType type, RectF rectangle) {
+            mCalls++;
+        }
+
+        @Override
+        public RectF getCurrentCursorPosition() {
+            return new RectF();
+        }
+
+        @Override
+        public void setCalcHeadersController(CalcHeadersController calcHeadersController) {
+        }
+
+        @Override
+        public void showCellSelection(RectF cellCursorRect) {
+            mCalls++;
+        }
+
+        @Override
+        public void showHeaderSelection(RectF cellCursorRect) {
+            mCalls++;
+        }
+
+        @Override
+        public void showAdjustLengthLine(boolean isRow, CalcHeadersView view) {
+            mCalls++;
+        }
+    }
+
+    /**
+     * Answers the document type of the activity and counts the updates of the handler, each of
+     * which is a UI post of the real controls. The formula bar is set in the posts of the handler,
+     * which are counted already.
+     */
+    private static class CountingControls implements InvalidationHandler.Controls {
+        private final boolean mTextDocument;
+        private final boolean mSpreadsheet;
+        private final boolean mPresentation;
+        private int mCalls;
+        private int mTextSelectionReads;
+        private boolean mEditMode;
+
+        CountingControls(boolean textDocument, boolean spreadsheet, boolean presentation) {
+            mTextDocument = textDocument;
+            mSpreadsheet = spreadsheet;
+            mPresentation = presentation;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public boolean isTextDocument() {
+            return mTextDocument;
+        }
+
+        @Override
+        public boolean isSpreadsheet() {
+            return mSpreadsheet;
+        }
+
+        @Override
+        public boolean isPresentation() {
+            return mPresentation;
+        }
+
+        @Override
+        public String getTextSelection() {
+            mTextSelectionReads++;
+            return "";
+        }
+
+        @Override
+        public void onDocumentModified() {
+        }
+
+        @Override
+        public boolean getEditModeStatus() {
+            return mEditMode;
+        }
+
+        @Override
+        public void switchToEditMode() {
+            mEditMode = true;
+            mCalls++;
+        }
+
+        @Override
+        public void switchToViewMode() {
+            mEditMode = false;
+            mCalls++;
+        }
+
+        @Override
+        public void showClipboardActions(String selectedText) {
+            mCalls++;
+        }
+
+        @Override
+        public void showHideClipboardCutAndCopy(boolean show) {
+            mCalls++;
+        }
+
+        @Override
+        public void onToggleStateChanged(int type, boolean pressed) {
+            mCalls++;
+        }
+
+        @Override
+        public void selectFont(String fontName) {
+            mCalls++;
+        }
+
+        @Override
+        public void selectFontSize(String fontSize) {
+            mCalls++;
+        }
+
+        @Override
+        public void updateColorPickerPosition(int color) {
+            mCalls++;
+        }
+
+        @Override
+        public void updateBackColorPickerPosition(int color) {
+            mCalls++;
+        }
+
+        @Override
+        public void showSoftKeyboardOrFormattingToolbar() {
+            mCalls++;
+        }
+
+        @Override
+        public void hideSoftKeyboard() {
+            mCalls++;
+        }
+
+        @Override
+        public void setCellFormula(String formula) {
+        }
+
+        @Override
+        public void setCellAddress(String address) {
+        }
+    }
+
+    /**
+     * Keeps the viewport the replay started with and counts the moves of the handler.
+     */
+    private static class CountingLayerClient extends GeckoLayerClient {
+        private final ImmutableViewportMetrics mMetrics;
+        private int mMoves;
+
+        CountingLayerClient(MainActivity context, EventCallback callback, ImmutableViewportMetrics metrics) {
+            super(context, callback);
+            mMetrics = metrics;
+        }
+
+        @Override
+        public ImmutableViewportMetrics getViewportMetrics() {
+            return mMetrics;
+        }
+
+        @Override
+        public void moveTo(PointF point, Float zoom) {
+            mMoves++;
+        }
+    }
+}
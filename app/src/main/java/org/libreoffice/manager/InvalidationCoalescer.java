@@ -0,0 +1,140 @@
+package org.libreoffice.manager;
+
+import android.graphics.RectF;
+import android.os.Handler;
+import android.view.Choreographer;
+
+import org.libreoffice.callback.EventCallback;
+import org.libreoffice.data.LOEvent;
+import org.mozilla.gecko.gfx.GeckoLayerClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the tile invalidations reported by LOKit until the next frame and then queues them as
+ * few TILE_INVALIDATION events as possible. Overlapping rectangles are merged into one, and an
+ * invalidation of the whole document replaces all collected rectangles.
+ *
+ * Rectangles can be added from any thread, the flush happens on the main thread, aligned to the
+ * display frame by the Choreographer.
+ */
+public class InvalidationCoalescer implements Choreographer.FrameCallback {
+    /* If more disjoint rectangles are collected in one frame, they are merged into their bounds. */
+    private static final int MAX_RECTANGLES = 8;
+
+    private final EventCallback mCallback;
+    private final GeckoLayerClient mLayerClient;
+    private final Handler mMainHandler;
+    private final List<RectF> mRectangles = new ArrayList<RectF>();
+    private boolean mInvalidateAll = false;
+    private boolean mFlushScheduled = false;
+
+    private long mRawInvalidationCount = 0;
+    private long mMergedInvalidationCount = 0;
+
+    public InvalidationCoalescer(EventCallback callback, GeckoLayerClient layerClient, Handler mainHandler) {
+        mCallback = callback;
+        mLayerClient = layerClient;
+        mMainHandler = mainHandler;
+    }
+
+    /**
+     * Add the rectangle (in CSS pixels) to the invalidated region.
+     */
+    public synchronized void invalidate(RectF rectangle) {
+        mRawInvalidationCount++;
+        if (!mInvalidateAll) {
+            addRectangle(new RectF(rectangle));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Invalidate the whole document (the "EMPTY" payload).
+     */
+    public synchronized void invalidateAll() {
+        mRawInvalidationCount++;
+        mInvalidateAll = true;
+        mRectangles.clear();
+        scheduleFlush();
+    }
+
+    private void addRectangle(RectF rectangle) {
+        // merge with every rectangle it touches, the merged one can touch others again
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < mRectangles.size(); i++) {
+                if (RectF.intersects(mRectangles.get(i), rectangle)) {
+                    rectangle.union(mRectangles.remove(i));
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        mRectangles.add(rectangle);
+
+        if (mRectangles.size() > MAX_RECTANGLES) {
+            RectF bounds = new RectF(rectangle);
+            for (RectF other : mRectangles) {
+                bounds.union(other);
+            }
+            mRectangles.clear();
+            mRectangles.add(bounds);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled) {
+            return;
+        }
+        mFlushScheduled = true;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(InvalidationCoalescer.this);
+            }
+        });
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<RectF> rectangles;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mInvalidateAll) {
+                mInvalidateAll = false;
+                rectangles = new ArrayList<RectF>();
+                RectF pageRect = mLayerClient.getViewportMetrics().getCssPageRect();
+                if (!pageRect.isEmpty()) {
+                    rectangles.add(pageRect);
+                }
+            } else {
+                rectangles = new ArrayList<RectF>(mRectangles);
+            }
+            mRectangles.clear();
+            mMergedInvalidationCount += rectangles.size();
+        }
+        if (mCallback == null) {
+            return;
+        }
+        for (RectF rectangle : rectangles) {
+            mCallback.queueEvent(new LOEvent(LOEvent.TILE_INVALIDATION, rectangle));
+        }
+    }
+
+    /**
+     * Number of tile invalidations reported by LOKit.
+     */
+    public synchronized long getRawInvalidationCount() {
+        return mRawInvalidationCount;
+    }
+
+    /**
+     * Number of TILE_INVALIDATION events queued after merging.
+     */
+    public synchronized long getMergedInvalidationCount() {
+        return mMergedInvalidationCount;
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.graphics.PointF;
 import android.graphics.RectF;
 import android.net.Uri;
+import android.os.Handler;
 import android.widget.EditText;
 import android.widget.Toast;
 import org.json.JSONArray;
@@ -31,20 +32,54 @@ import java.util.List;
 public class InvalidationHandler implements Document.MessageCallback, Office.MessageCallback {
     private final DocumentOverlay mDocumentOverlay;
     private final GeckoLayerClient mLayerClient;
+    private final InvalidationCoalescer mInvalidationCoalescer;
     private OverlayState mState;
     private boolean mKeyEvent = false;
     private final MainActivity mContext;
     private final EventCallback mCallback;
+    private final Controls mControls;
+    /* Posts to the UI thread, the main handler unless replaying. */
+    private final Handler mMainHandler;
     private int currentTotalPageNumber = 0; // total page number of the current document
+    /* Parses the rectangles, payloads are converted on the callback and the UI thread. */
+    private final PayloadParser mPayloadParser = new PayloadParser();
+    /* Parses the states, only on the callback thread. */
+    private final PayloadParser mStateParser = new PayloadParser();
+    private volatile CallbackTraceRecorder mTraceRecorder;
 
     public InvalidationHandler(MainActivity context, EventCallback callback) {
+        this(context, callback, context.getDocumentOverlay(), context.getLayerClient(), new ActivityControls(context),
+                TheApplication.getMainHandler());
+    }
+
+    /**
+     * Create a handler drawing on the overlay, moving the viewport through the layer client,
+     * updating the controls and posting to the UI thread through the handler given, as the
+     * CallbackTraceReplayer does with its stand-ins.
+     */
+    InvalidationHandler(MainActivity context, EventCallback callback, DocumentOverlay documentOverlay,
+                        GeckoLayerClient layerClient, Controls controls, Handler mainHandler) {
         mContext = context;
         mCallback = callback;
-        mDocumentOverlay = mContext.getDocumentOverlay();
-        mLayerClient = mContext.getLayerClient();
+        mControls = controls;
+        mDocumentOverlay = documentOverlay;
+        mLayerClient = layerClient;
+        mMainHandler = mainHandler;
+        mInvalidationCoalescer = new InvalidationCoalescer(callback, mLayerClient, mainHandler);
         mState = OverlayState.NONE;
     }
 
+    /**
+     * Record the callbacks into the recorder, or stop recording if it is null.
+     */
+    public void setTraceRecorder(CallbackTraceRecorder recorder) {
+        mTraceRecorder = recorder;
+    }
+
+    public CallbackTraceRecorder getTraceRecorder() {
+        return mTraceRecorder;
+    }
+
     /**
      * Processes callback message
      *
@@ -53,6 +88,10 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      */
     @Override
     public void messageRetrieved(int messageID, String payload) {
+        CallbackTraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            recorder.record(messageID, payload);
+        }
         if (!TheApplication.getSPManager().getBoolean(CustomConstant.ENABLE_DEVELOPER_PREFS_KEY, false)) {
             // enable handling of hyperlinks and search result even in the Viewer
             if (messageID != Document.CALLBACK_INVALIDATE_TILES
@@ -149,7 +188,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
             }else if(payloadObject.getString("commandName").equals(".uno:Name") ||
                     payloadObject.getString("commandName").equals(".uno:RenamePage")){
                 //success returns false even though its true for some reason,
-                TheApplication.getMainHandler().post(new Runnable() {
+                mMainHandler.post(new Runnable() {
                     @Override
                     public void run() {
                         mContext.getTileProvider().resetParts();
@@ -160,7 +199,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
                 });
             } else if(payloadObject.getString("commandName").equals(".uno:Remove") ||
                     payloadObject.getString("commandName").equals(".uno:DeletePage") ) {
-                TheApplication.getMainHandler().post(new Runnable() {
+                mMainHandler.post(new Runnable() {
                     @Override
                     public void run() {
                         mContext.getTileProvider().resetParts();
@@ -176,19 +215,19 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
     }
 
     private void cellFormula(final String payload) {
-        TheApplication.getMainHandler().post(new Runnable() {
+        mMainHandler.post(new Runnable() {
             @Override
             public void run() {
-                ((EditText)mContext.findViewById(R.id.calc_formula)).setText(payload);
+                mControls.setCellFormula(payload);
             }
         });
     }
 
     private void cellAddress(final String payload) {
-        TheApplication.getMainHandler().post(new Runnable() {
+        mMainHandler.post(new Runnable() {
             @Override
             public void run() {
-                ((EditText)mContext.findViewById(R.id.calc_address)).setText(payload);
+                mControls.setCellAddress(payload);
             }
         });
     }
@@ -292,60 +331,68 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
         } else if (selectionRectangle.bottom > moveToRect.bottom || selectionRectangle.top > moveToRect.bottom){
             newTop = selectionRectangle.bottom - (moveToRect.height() * 0.5f) * oldZoom / newZoom; // 0.5 f gives bottom margin
         }
-        mContext.getLayerClient().moveTo( new PointF(newLeft, newTop), newZoom);
+        mLayerClient.moveTo( new PointF(newLeft, newTop), newZoom);
     }
 
     private void pageSizeChanged(String payload){
-        if(mContext.getTileProvider().isTextDocument()){
-            String[] bounds = payload.split(",");
-            int pageWidth = Integer.parseInt(bounds[0]);
-            int pageHeight = Integer.parseInt(bounds[1].trim());
+        if(mControls.isTextDocument()){
+            int pageWidth;
+            int pageHeight;
+            synchronized (mPayloadParser) {
+                if (mPayloadParser.parseNumbers(payload) < 2) {
+                    return;
+                }
+                pageWidth = mPayloadParser.getNumber(0);
+                pageHeight = mPayloadParser.getNumber(1);
+            }
             if(mCallback != null)mCallback.queueEvent(new LOEvent(LOEvent.PAGE_SIZE_CHANGED, pageWidth, pageHeight));
         }
     }
 
     private void stateChanged(String payload) {
-        String[] parts = payload.split("=");
-        if (parts.length < 2) {return;}
-        final String value = parts[1];
-        boolean pressed = Boolean.parseBoolean(value);
-        if (!mContext.getTileProvider().isReady()) {return;}
-        if (parts[0].equals(".uno:Bold")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.BOLD, pressed);
-        } else if (parts[0].equals(".uno:Italic")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.ITALIC, pressed);
-        } else if (parts[0].equals(".uno:Underline")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.UNDERLINE, pressed);
-        } else if (parts[0].equals(".uno:Strikeout")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.STRIKEOUT, pressed);
-        } else if (parts[0].equals(".uno:CharFontName")) {
-            mContext.getFontController().selectFont(value);
-        } else if (parts[0].equals(".uno:FontHeight")) {
-            mContext.getFontController().selectFontSize(value);
-        } else if (parts[0].equals(".uno:LeftPara")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.ALIGN_LEFT, pressed);
-        } else if (parts[0].equals(".uno:CenterPara")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.ALIGN_CENTER, pressed);
-        } else if (parts[0].equals(".uno:RightPara")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.ALIGN_RIGHT, pressed);
-        } else if (parts[0].equals(".uno:JustifyPara")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.ALIGN_JUSTIFY, pressed);
-        } else if (parts[0].equals(".uno:DefaultBullet")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.BULLET_LIST, pressed);
-        } else if (parts[0].equals(".uno:DefaultNumbering")) {
-            mContext.getFormattingController().onToggleStateChanged(Document.NUMBERED_LIST, pressed);
-        } else if (parts[0].equals(".uno:Color")) {
-            mContext.getFontController().colorPaletteListener.updateColorPickerPosition(Integer.parseInt(value));
-        } else if (mContext.getTileProvider().isTextDocument() && (parts[0].equals(".uno:BackColor") || parts[0].equals(".uno:CharBackColor"))) {
-            mContext.getFontController().backColorPaletteListener.updateColorPickerPosition(Integer.parseInt(value));
-        } else if (mContext.getTileProvider().isPresentation() && parts[0].equals(".uno:CharBackColor")) {
-            mContext.getFontController().backColorPaletteListener.updateColorPickerPosition(Integer.parseInt(value));
-        } else if (mContext.getTileProvider().isSpreadsheet() && parts[0].equals(".uno:BackgroundColor")) {
-            mContext.getFontController().backColorPaletteListener.updateColorPickerPosition(Integer.parseInt(value));
-        } else if (parts[0].equals(".uno:StatePageNumber")) {
+        PayloadParser state = mStateParser;
+        if (!state.parseKeyValue(payload)) {return;}
+        boolean pressed = state.isValueTrue();
+        if (!mControls.isReady()) {return;}
+        if (state.keyEquals(".uno:ModifiedStatus")) {
+            if (pressed) {
+                mControls.onDocumentModified();
+            }
+        } else if (state.keyEquals(".uno:Bold")) {
+            mControls.onToggleStateChanged(Document.BOLD, pressed);
+        } else if (state.keyEquals(".uno:Italic")) {
+            mControls.onToggleStateChanged(Document.ITALIC, pressed);
+        } else if (state.keyEquals(".uno:Underline")) {
+            mControls.onToggleStateChanged(Document.UNDERLINE, pressed);
+        } else if (state.keyEquals(".uno:Strikeout")) {
+            mControls.onToggleStateChanged(Document.STRIKEOUT, pressed);
+        } else if (state.keyEquals(".uno:CharFontName")) {
+            mControls.selectFont(state.getValue());
+        } else if (state.keyEquals(".uno:FontHeight")) {
+            mControls.selectFontSize(state.getValue());
+        } else if (state.keyEquals(".uno:LeftPara")) {
+            mControls.onToggleStateChanged(Document.ALIGN_LEFT, pressed);
+        } else if (state.keyEquals(".uno:CenterPara")) {
+            mControls.onToggleStateChanged(Document.ALIGN_CENTER, pressed);
+        } else if (state.keyEquals(".uno:RightPara")) {
+            mControls.onToggleStateChanged(Document.ALIGN_RIGHT, pressed);
+        } else if (state.keyEquals(".uno:JustifyPara")) {
+            mControls.onToggleStateChanged(Document.ALIGN_JUSTIFY, pressed);
+        } else if (state.keyEquals(".uno:DefaultBullet")) {
+            mControls.onToggleStateChanged(Document.BULLET_LIST, pressed);
+        } else if (state.keyEquals(".uno:DefaultNumbering")) {
+            mControls.onToggleStateChanged(Document.NUMBERED_LIST, pressed);
+        } else if (state.keyEquals(".uno:Color")) {
+            mControls.updateColorPickerPosition(state.getValueAsInt());
+        } else if (mControls.isTextDocument() && (state.keyEquals(".uno:BackColor") || state.keyEquals(".uno:CharBackColor"))) {
+            mControls.updateBackColorPickerPosition(state.getValueAsInt());
+        } else if (mControls.isPresentation() && state.keyEquals(".uno:CharBackColor")) {
+            mControls.updateBackColorPickerPosition(state.getValueAsInt());
+        } else if (mControls.isSpreadsheet() && state.keyEquals(".uno:BackgroundColor")) {
+            mControls.updateBackColorPickerPosition(state.getValueAsInt());
+        } else if (state.keyEquals(".uno:StatePageNumber")) {
             // get the total page number and compare to the current value and update accordingly
-            String[] splitStrings = parts[1].split(" ");
-            int totalPageNumber = Integer.valueOf(splitStrings[splitStrings.length - 1]);
+            int totalPageNumber = state.getValueLastWordAsInt();
             if (totalPageNumber != currentTotalPageNumber) {
                 currentTotalPageNumber = totalPageNumber;
                 // update part page rectangles stored in DocumentOverlayView object
@@ -361,18 +408,14 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      * @return rectangle in pixel coordinates
      */
     public RectF convertPayloadToRectangle(String payload) {
-        String payloadWithoutWhitespace = payload.replaceAll("\\s", ""); // remove all whitespace from the string
-
-        if (payloadWithoutWhitespace.isEmpty() || payloadWithoutWhitespace.equals("EMPTY")) {
-            return null;
-        }
-
-        String[] coordinates = payloadWithoutWhitespace.split(",");
-
-        if (coordinates.length != 4) {
-            return null;
+        synchronized (mPayloadParser) {
+            // "EMPTY" and other payloads which aren't four numbers are no rectangle
+            if (mPayloadParser.parseNumbers(payload) != 4) {
+                return null;
+            }
+            return convertTwipsToRectangle(mPayloadParser.getNumber(0), mPayloadParser.getNumber(1),
+                    mPayloadParser.getNumber(2), mPayloadParser.getNumber(3));
         }
-        return convertPayloadToRectangle(coordinates);
     }
 
     /**
@@ -382,34 +425,22 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      * @return rectangle in pixel coordinates
      */
     public RectF convertPayloadCellToRectangle(String payload) {
-        String payloadWithoutWhitespace = payload.replaceAll("\\s", ""); // remove all whitespace from the string
-
-        if (payloadWithoutWhitespace.isEmpty() || payloadWithoutWhitespace.equals("EMPTY")) {
-            return null;
-        }
-
-        String[] coordinates = payloadWithoutWhitespace.split(",");
-
-        if (coordinates.length != 6 ) {
-            return null;
+        synchronized (mPayloadParser) {
+            // the rectangle followed by the column and the row of the cell
+            if (mPayloadParser.parseNumbers(payload) != 6) {
+                return null;
+            }
+            return convertTwipsToRectangle(mPayloadParser.getNumber(0), mPayloadParser.getNumber(1),
+                    mPayloadParser.getNumber(2), mPayloadParser.getNumber(3));
         }
-        return convertPayloadToRectangle(coordinates);
     }
 
     /**
      * Converts rectangle coordinates to rectangle in pixel coordinates
      *
-     * @param coordinates - the first four items defines the rectangle
      * @return rectangle in pixel coordinates
      */
-    public RectF convertPayloadToRectangle(String[] coordinates) {
-        if (coordinates.length < 4 ) {
-            return null;
-        }
-        int x = Integer.decode(coordinates[0]);
-        int y = Integer.decode(coordinates[1]);
-        int width = Integer.decode(coordinates[2]);
-        int height = Integer.decode(coordinates[3]);
+    private RectF convertTwipsToRectangle(int x, int y, int width, int height) {
         float dpi = DeviceUtils.getDpi();
         return new RectF(
             LOKitTileProvider.twipToPixel(x, dpi),
@@ -426,18 +457,15 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      * @return list of rectangles
      */
     public List<RectF> convertPayloadToRectangles(String payload) {
-        List<RectF> rectangles = new ArrayList<RectF>();
-        String[] rectangleArray = payload.split(";");
-
-        for (String coordinates : rectangleArray) {
-            RectF rectangle = convertPayloadToRectangle(coordinates);
-            if (rectangle != null) {
-                rectangles.add(rectangle);
+        synchronized (mPayloadParser) {
+            int count = mPayloadParser.parseRectangles(payload);
+            List<RectF> rectangles = new ArrayList<RectF>(count);
+            for (int i = 0; i < count; i++) {
+                rectangles.add(convertTwipsToRectangle(mPayloadParser.getRectangleX(i), mPayloadParser.getRectangleY(i),
+                        mPayloadParser.getRectangleWidth(i), mPayloadParser.getRectangleHeight(i)));
             }
-
+            return rectangles;
         }
-
-        return rectangles;
     }
 
     /**
@@ -446,12 +474,21 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      * @param payload
      */
     private void invalidateTiles(String payload) {
+        if (payload.trim().startsWith("EMPTY")) {
+            // "EMPTY" (optionally followed by the part) invalidates the whole document
+            mInvalidationCoalescer.invalidateAll();
+            return;
+        }
         RectF rectangle = convertPayloadToRectangle(payload);
         if (rectangle != null) {
-            if(mCallback != null)mCallback.queueEvent(new LOEvent(LOEvent.TILE_INVALIDATION, rectangle));
+            mInvalidationCoalescer.invalidate(rectangle);
         }
     }
 
+    public InvalidationCoalescer getInvalidationCoalescer() {
+        return mInvalidationCoalescer;
+    }
+
     /**
      * Handles the cursor invalidation message
      *
@@ -501,7 +538,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
         } else if (cursorRectangle.bottom > moveToRect.bottom || cursorRectangle.top > moveToRect.bottom) {
             newTop = cursorRectangle.bottom - (moveToRect.height() / 2.0f);
         }
-        mContext.getLayerClient().moveTo(new PointF(newLeft, newTop), null);
+        mLayerClient.moveTo(new PointF(newLeft, newTop), null);
     }
 
     /**
@@ -539,10 +576,10 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
                 changeStateTo(OverlayState.TRANSITION);
             }
             mDocumentOverlay.changeSelections(Collections.emptyList());
-            if (mContext.getTileProvider().isSpreadsheet()) {
+            if (mControls.isSpreadsheet()) {
                 mDocumentOverlay.showHeaderSelection(null);
             }
-            mContext.getToolbarController().showHideClipboardCutAndCopy(false);
+            mControls.showHideClipboardCutAndCopy(false);
         } else {
             List<RectF> rectangles = convertPayloadToRectangles(payload);
             if (mState != OverlayState.SELECTION) {
@@ -550,11 +587,10 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
             }
             changeStateTo(OverlayState.SELECTION);
             mDocumentOverlay.changeSelections(rectangles);
-            if (mContext.getTileProvider().isSpreadsheet()) {
+            if (mControls.isSpreadsheet()) {
                 mDocumentOverlay.showHeaderSelection(rectangles.get(0));
             }
-            String selectedText = mContext.getTileProvider().getTextSelection("");
-            mContext.getToolbarController().showClipboardActions(selectedText);
+            mControls.showClipboardActions(mControls.getTextSelection());
         }
     }
 
@@ -637,11 +673,11 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      */
     private void handleGeneralChangeState(OverlayState previous, OverlayState next) {
         if (previous == OverlayState.NONE &&
-                !mContext.getToolbarController().getEditModeStatus()) {
-            mContext.getToolbarController().switchToEditMode();
+                !mControls.getEditModeStatus()) {
+            mControls.switchToEditMode();
         } else if (next == OverlayState.NONE &&
-                mContext.getToolbarController().getEditModeStatus()) {
-            mContext.getToolbarController().switchToViewMode();
+                mControls.getEditModeStatus()) {
+            mControls.switchToViewMode();
         }
     }
 
@@ -660,7 +696,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
         mDocumentOverlay.hideSelections();
         mDocumentOverlay.hideCursor();
         mDocumentOverlay.hideGraphicSelection();
-        mContext.hideSoftKeyboard();
+        mControls.hideSoftKeyboard();
     }
 
     /**
@@ -676,7 +712,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      * Handle a transition to OverlayState.CURSOR state.
      */
     private void handleCursorState(OverlayState previous) {
-        mContext.showSoftKeyboardOrFormattingToolbar();
+        mControls.showSoftKeyboardOrFormattingToolbar();
         if (previous == OverlayState.TRANSITION) {
             mDocumentOverlay.showHandle(SelectionHandle.HandleType.MIDDLE);
             mDocumentOverlay.showCursor();
@@ -707,7 +743,7 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
      */
     private void handleGraphicSelectionState(OverlayState previous) {
         mDocumentOverlay.showGraphicSelection();
-        mContext.hideSoftKeyboard();
+        mControls.hideSoftKeyboard();
     }
 
     /**
@@ -724,6 +760,146 @@ public class InvalidationHandler implements Document.MessageCallback, Office.Mes
         mKeyEvent = true;
     }
 
+    /**
+     * The document and the controls of the activity the handler updates, apart from the overlay
+     * and the viewport. The queries answer on the calling thread, the updates post to the UI.
+     */
+    interface Controls {
+        boolean isReady();
+        boolean isTextDocument();
+        boolean isSpreadsheet();
+        boolean isPresentation();
+        /* Reads the selection from LOKit. */
+        String getTextSelection();
+        void onDocumentModified();
+        boolean getEditModeStatus();
+        void switchToEditMode();
+        void switchToViewMode();
+        void showClipboardActions(String selectedText);
+        void showHideClipboardCutAndCopy(boolean show);
+        void onToggleStateChanged(int type, boolean pressed);
+        void selectFont(String fontName);
+        void selectFontSize(String fontSize);
+        void updateColorPickerPosition(int color);
+        void updateBackColorPickerPosition(int color);
+        void showSoftKeyboardOrFormattingToolbar();
+        void hideSoftKeyboard();
+        /* Only on the UI thread. */
+        void setCellFormula(String formula);
+        void setCellAddress(String address);
+    }
+
+    /**
+     * The tile provider, toolbars and keyboard of the activity.
+     */
+    private static class ActivityControls implements Controls {
+        private final MainActivity mContext;
+
+        ActivityControls(MainActivity context) {
+            mContext = context;
+        }
+
+        @Override
+        public boolean isReady() {
+            return mContext.getTileProvider().isReady();
+        }
+
+        @Override
+        public boolean isTextDocument() {
+            return mContext.getTileProvider().isTextDocument();
+        }
+
+        @Override
+        public boolean isSpreadsheet() {
+            return mContext.getTileProvider().isSpreadsheet();
+        }
+
+        @Override
+        public boolean isPresentation() {
+            return mContext.getTileProvider().isPresentation();
+        }
+
+        @Override
+        public String getTextSelection() {
+            return mContext.getTileProvider().getTextSelection("");
+        }
+
+        @Override
+        public void onDocumentModified() {
+            mContext.getTileProvider().onDocumentModified();
+        }
+
+        @Override
+        public boolean getEditModeStatus() {
+            return mContext.getToolbarController().getEditModeStatus();
+        }
+
+        @Override
+        public void switchToEditMode() {
+            mContext.getToolbarController().switchToEditMode();
+        }
+
+        @Override
+        public void switchToViewMode() {
+            mContext.getToolbarController().switchToViewMode();
+        }
+
+        @Override
+        public void showClipboardActions(String selectedText) {
+            mContext.getToolbarController().showClipboardActions(selectedText);
+        }
+
+        @Override
+        public void showHideClipboardCutAndCopy(boolean show) {
+            mContext.getToolbarController().showHideClipboardCutAndCopy(show);
+        }
+
+        @Override
+        public void onToggleStateChanged(int type, boolean pressed) {
+            mContext.getFormattingController().onToggleStateChanged(type, pressed);
+        }
+
+        @Override
+        public void selectFont(String fontName) {
+            mContext.getFontController().selectFont(fontName);
+        }
+
+        @Override
+        public void selectFontSize(String fontSize) {
+            mContext.getFontController().selectFontSize(fontSize);
+        }
+
+        @Override
+        public void updateColorPickerPosition(int color) {
+            mContext.getFontController().colorPaletteListener.updateColorPickerPosition(color);
+        }
+
+        @Override
+        public void updateBackColorPickerPosition(int color) {
+            mContext.getFontController().backColorPaletteListener.updateColorPickerPosition(color);
+        }
+
+        @Override
+        public void showSoftKeyboardOrFormattingToolbar() {
+            mContext.showSoftKeyboardOrFormattingToolbar();
+        }
+
+        @Override
+        public void hideSoftKeyboard() {
+            mContext.hideSoftKeyboard();
+        }
+
+        @Override
+        public void setCellFormula(String formula) {
+            ((EditText)mContext.findViewById(R.id.calc_formula)).setText(formula);
+        }
+
+        @Override
+        public void setCellAddress(String address) {
+            ((EditText)mContext.findViewById(R.id.calc_address)).setText(address);
+        }
+    }
+
     /**
      * The states the overlay.
      */
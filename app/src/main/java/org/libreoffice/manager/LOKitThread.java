@@ -0,0 +1,125 @@
+package org.libreoffice.manager;
+
+import android.graphics.RectF;
+import android.util.Log;
+
+import org.libreoffice.callback.EventCallback;
+import org.libreoffice.data.LOEvent;
+import org.mozilla.gecko.gfx.LatencyHistogram;
+import org.mozilla.gecko.gfx.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Single thread that owns all LOKit access. Events are queued by priority (see LOEvent.PRIORITY_*)
+ * and processed one at a time by the given processor, so the UI, GL and timer threads never block
+ * on rendering.
+ *
+ * Redundant events are coalesced while they are still waiting in the queue: a tile reevaluation
+ * request for a layer that already has one pending is dropped, as the pending request will read the
+ * latest viewport of the layer when it is processed. The same holds for the idempotent update
+ * events (calc headers, part page rectangles, zoom constraints, size change). A tile invalidation
+ * which overlaps a pending invalidation is merged into it, so a burst of invalidations of the same
+ * area renders the area once.
+ */
+public class LOKitThread extends Thread {
+    private static final String LOGTAG = LOKitThread.class.getSimpleName();
+    private static final LatencyHistogram sQueueWait = MetricsRegistry.get().histogram(MetricsRegistry.EVENT_QUEUE_WAIT);
+
+    private final PriorityBlockingQueue<LOEvent> mEventQueue = new PriorityBlockingQueue<LOEvent>();
+    private final EventCallback mProcessor;
+    /* Coalescing keys of the events which are queued but not yet taken by the thread. */
+    private final Set<Object> mPendingKeys = new HashSet<Object>();
+    /* Tile invalidations which are queued but not yet taken by the thread. */
+    private final List<LOEvent> mPendingInvalidations = new ArrayList<LOEvent>();
+    private long mSequence = 0;
+
+    public LOKitThread(EventCallback processor) {
+        super("LOKitThread");
+        mProcessor = processor;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            LOEvent event;
+            try {
+                event = mEventQueue.take();
+            } catch (InterruptedException exception) {
+                Log.i(LOGTAG, "LOKitThread interrupted, stopping");
+                return;
+            }
+            sQueueWait.recordNanos(System.nanoTime() - event.mQueueTime);
+            synchronized (this) {
+                Object key = getCoalescingKey(event);
+                if (key != null) {
+                    mPendingKeys.remove(key);
+                }
+                if (event.mType == LOEvent.TILE_INVALIDATION) {
+                    mPendingInvalidations.remove(event);
+                }
+            }
+            mProcessor.queueEvent(event);
+            if (event.mType == LOEvent.CLOSE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue the event for processing on this thread.
+     * @return false if the event was coalesced with an already pending event.
+     */
+    public synchronized boolean queueEvent(LOEvent event) {
+        Object key = getCoalescingKey(event);
+        if (key != null && !mPendingKeys.add(key)) {
+            return false;
+        }
+        if (event.mType == LOEvent.TILE_INVALIDATION && mergeInvalidation(event.mInvalidationRect)) {
+            return false;
+        }
+        event.mSequence = mSequence++;
+        event.mQueueTime = System.nanoTime();
+        if (event.mType == LOEvent.TILE_INVALIDATION) {
+            mPendingInvalidations.add(event);
+        }
+        mEventQueue.add(event);
+        return true;
+    }
+
+    /**
+     * Merge the rect into a pending invalidation it overlaps with.
+     * @return false if there is no such invalidation and the event has to be queued.
+     */
+    private boolean mergeInvalidation(RectF rect) {
+        for (LOEvent pending : mPendingInvalidations) {
+            if (RectF.intersects(pending.mInvalidationRect, rect)) {
+                pending.mInvalidationRect.union(rect);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key under which equivalent events are coalesced, or null if the event must
+     * always be processed.
+     */
+    private static Object getCoalescingKey(LOEvent event) {
+        switch (event.mType) {
+            case LOEvent.TILE_REEVALUATION_REQUEST:
+                return event.mComposedTileLayer;
+            case LOEvent.UPDATE_CALC_HEADERS:
+            case LOEvent.UPDATE_PART_PAGE_RECT:
+            case LOEvent.UPDATE_ZOOM_CONSTRAINTS:
+            case LOEvent.SIZE_CHANGED:
+                return event.mType;
+            default:
+                return null;
+        }
+    }
+}
@@ -3,13 +3,17 @@ package org.libreoffice.manager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.print.PrintAttributes;
 import android.print.PrintDocumentAdapter;
 import android.print.PrintManager;
+import android.util.DisplayMetrics;
 import android.view.KeyEvent;
 import android.widget.Toast;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.libreoffice.application.CustomConstant;
 import org.libreoffice.application.TheApplication;
 import org.libreoffice.callback.EventCallback;
 import org.libreoffice.data.LOEvent;
@@ -25,7 +29,11 @@ import org.libreoffice.ui.MainActivity;
 import org.libreoffice.utils.DeviceUtils;
 import org.mozilla.gecko.gfx.BufferedCairoImage;
 import org.mozilla.gecko.gfx.CairoImage;
+import org.mozilla.gecko.gfx.CairoUtils;
 import org.mozilla.gecko.gfx.IntSize;
+import org.mozilla.gecko.gfx.LatencyHistogram;
+import org.mozilla.gecko.gfx.MetricsRegistry;
+import org.mozilla.gecko.gfx.SolidColorCairoImage;
 import java.io.File;
 import java.nio.ByteBuffer;
 
@@ -34,6 +42,13 @@ import java.nio.ByteBuffer;
  */
 public class LOKitTileProvider implements TileProvider {
     private static final int TILE_SIZE = 256;
+    private static final int LARGE_TILE_SIZE = 512;
+    private static final String TILE_CACHE_DIRECTORY = "tiles";
+    private static final long TILE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final LatencyHistogram sPaintTime = MetricsRegistry.get().histogram(MetricsRegistry.TILE_PAINT_TIME);
+    private final int mTileSize;
+    /* Cairo format of the tile images, FORMAT_RGB16_565 in the low memory mode. */
+    private final int mTileFormat;
     private final float mTileWidth;
     private final float mTileHeight;
     private String mInputFile;
@@ -46,6 +61,7 @@ public class LOKitTileProvider implements TileProvider {
     private float mHeightTwip;
     private final Document.MessageCallback mMessageCallback;
     private final EventCallback mCallback;
+    private TileDiskCache mTileCache;
     /**
      * Initialize LOKit and load the document.
      * @param messageCallback - callback for messages retrieved from LOKit
@@ -73,13 +89,19 @@ public class LOKitTileProvider implements TileProvider {
             mDocument = mOffice.documentLoad((new File(fileToBeEncoded.getParent(),encodedFileName)).getPath());
         }
         mDPI = DeviceUtils.getDpi();
-        mTileWidth = pixelToTwip(TILE_SIZE, mDPI);
-        mTileHeight = pixelToTwip(TILE_SIZE, mDPI);
+        mTileSize = chooseTileSize();
+        mTileFormat = chooseTileFormat();
+        mTileWidth = pixelToTwip(mTileSize, mDPI);
+        mTileHeight = pixelToTwip(mTileSize, mDPI);
 
         if (mDocument != null)
             mDocument.initializeForRendering();
 
         if (checkDocument()) {
+            if (TheApplication.getSPManager().getBoolean(CustomConstant.ENABLE_TILE_CACHE_PREFS_KEY, false)) {
+                mTileCache = new TileDiskCache(new File(mContext.getCacheDir(), TILE_CACHE_DIRECTORY), TILE_CACHE_MAX_BYTES);
+                mTileCache.openDocument(new File(input));
+            }
             postLoad();
             mIsReady = true;
         } else {
@@ -87,6 +109,38 @@ public class LOKitTileProvider implements TileProvider {
         }
     }
 
+    /**
+     * Larger tiles need fewer paintTile calls per screen. They are used on xxhdpi screens, where
+     * a screen holds many small tiles, and for spreadsheets, which are cheap to render in large
+     * areas.
+     */
+    private int chooseTileSize() {
+        boolean highDensity = mDPI >= DisplayMetrics.DENSITY_XXHIGH;
+        boolean spreadsheet = mDocument != null && mDocument.getDocumentType() == Document.DOCTYPE_SPREADSHEET;
+        return highDensity || spreadsheet ? LARGE_TILE_SIZE : TILE_SIZE;
+    }
+
+    /**
+     * In the low memory mode, which is on by default on low RAM devices, tiles are kept in RGB565,
+     * halving their buffer and texture memory. Text and opaque document content look the same,
+     * but images and gradients band, so presentations and drawings keep ARGB32.
+     */
+    private int chooseTileFormat() {
+        boolean lowMemory = TheApplication.getSPManager().getBoolean(CustomConstant.LOW_MEMORY_TILES_PREFS_KEY,
+                DeviceUtils.isLowRamDevice());
+        boolean imageHeavy = mDocument != null && (mDocument.getDocumentType() == Document.DOCTYPE_PRESENTATION
+                || mDocument.getDocumentType() == Document.DOCTYPE_DRAWING);
+        return lowMemory && !imageHeavy ? CairoImage.FORMAT_RGB16_565 : CairoImage.FORMAT_ARGB32;
+    }
+
+    /**
+     * @see TileProvider#getTileSize()
+     */
+    @Override
+    public int getTileSize() {
+        return mTileSize;
+    }
+
     /**
      * Triggered after the document is loaded.
      */
@@ -405,8 +459,66 @@ public class LOKitTileProvider implements TileProvider {
             return null;
 
         CairoImage image = new BufferedCairoImage(buffer, tileSize.width, tileSize.height, CairoImage.FORMAT_ARGB32);
+        if (mTileCache != null && mTileCache.read(getCurrentPartNumber(), x, y, tileSize, zoom, buffer)) {
+            return toTileFormat(toSolidColorImage(image));
+        }
         rerenderTile(image, x, y, tileSize, zoom);
-        return image;
+        if (mTileCache != null && mDocument != null) {
+            mTileCache.write(getCurrentPartNumber(), x, y, tileSize, zoom, buffer);
+        }
+        return toTileFormat(toSolidColorImage(image));
+    }
+
+    /**
+     * Blank page areas and empty cells render to tiles of a single colour, replace them by the
+     * colour so they need neither the buffer nor a texture of the tile size.
+     */
+    private static CairoImage toSolidColorImage(CairoImage image) {
+        CairoImage solidColorImage = SolidColorCairoImage.fromUniformImage(image);
+        if (solidColorImage == null) {
+            return image;
+        }
+        image.destroy();
+        return solidColorImage;
+    }
+
+    /**
+     * Convert the image rendered in ARGB32 to the tile format. If there is no memory for the
+     * converted buffer, the image is kept as it is.
+     */
+    private CairoImage toTileFormat(CairoImage image) {
+        if (mTileFormat != CairoImage.FORMAT_RGB16_565 || image.getFormat() != CairoImage.FORMAT_ARGB32
+                || image.getBuffer() == null) {
+            return image;
+        }
+        IntSize size = image.getSize();
+        ByteBuffer buffer = DirectBufferAllocator.guardedAllocate(size.getArea() * 2);
+        if (buffer == null) {
+            return image;
+        }
+        CairoUtils.convertARGB32ToRGB565(image.getBuffer(), buffer, size.getArea());
+        image.destroy();
+        return new BufferedCairoImage(buffer, size.width, size.height, CairoImage.FORMAT_RGB16_565);
+    }
+
+    /**
+     * Remove the cached tiles which intersect the invalidated rect (in CSS pixels).
+     */
+    public void invalidateCachedTiles(RectF rect) {
+        if (mTileCache != null) {
+            mTileCache.invalidate(getCurrentPartNumber(), rect);
+        }
+    }
+
+    /**
+     * The document was modified, so its rendered tiles must not be cached anymore. Called by every
+     * entry point which may edit the document, before LOKit is called, as the modified status
+     * callback only arrives after tiles of the edited document may have been rendered.
+     */
+    public void onDocumentModified() {
+        if (mTileCache != null) {
+            mTileCache.setDocumentModified();
+        }
     }
 
     /**
@@ -419,8 +531,35 @@ public class LOKitTileProvider implements TileProvider {
             float twipY = pixelToTwip(y, mDPI) / zoom;
             float twipWidth = mTileWidth / zoom;
             float twipHeight = mTileHeight / zoom;
+            long start = System.nanoTime();
             mDocument.paintTile(image.getBuffer(), tileSize.width, tileSize.height, (int) twipX, (int) twipY, (int) twipWidth, (int) twipHeight);
+            sPaintTime.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @see TileProvider#createTilePart(float, float, IntSize, float, Rect)
+     */
+    @Override
+    public CairoImage createTilePart(float x, float y, IntSize tileSize, float zoom, Rect partRect) {
+        int width = partRect.width();
+        int height = partRect.height();
+        ByteBuffer buffer = DirectBufferAllocator.guardedAllocate(width * height * 4);
+        if (buffer == null)
+            return null;
+
+        CairoImage image = new BufferedCairoImage(buffer, width, height, CairoImage.FORMAT_ARGB32);
+        if (mDocument != null) {
+            // use the same twip origin and scale as rerenderTile, so the part matches the tile pixels
+            int twipX = (int) (pixelToTwip(x, mDPI) / zoom);
+            int twipY = (int) (pixelToTwip(y, mDPI) / zoom);
+            float twipPerPixelX = (int) (mTileWidth / zoom) / (float) tileSize.width;
+            float twipPerPixelY = (int) (mTileHeight / zoom) / (float) tileSize.height;
+            mDocument.paintTile(buffer, width, height,
+                    Math.round(twipX + partRect.left * twipPerPixelX), Math.round(twipY + partRect.top * twipPerPixelY),
+                    Math.round(width * twipPerPixelX), Math.round(height * twipPerPixelY));
         }
+        return toTileFormat(image);
     }
 
     /**
@@ -455,6 +594,10 @@ public class LOKitTileProvider implements TileProvider {
      */
     @Override
     public void close() {
+        if (mTileCache != null) {
+            mTileCache.close();
+            mTileCache = null;
+        }
         if (mDocument != null) {
             mDocument.destroy();
             mDocument = null;
@@ -520,6 +663,7 @@ public class LOKitTileProvider implements TileProvider {
      */
     @Override
     public void sendKeyEvent(KeyEvent keyEvent) {
+        onDocumentModified();
         switch (keyEvent.getAction()) {
             case KeyEvent.ACTION_MULTIPLE:
                 String keyString = keyEvent.getCharacters();
@@ -538,9 +682,10 @@ public class LOKitTileProvider implements TileProvider {
     }
 
     private void mouseButton(int type, PointF inDocument, int numberOfClicks, float zoomFactor) {
+        onDocumentModified();
         int x = (int) pixelToTwip(inDocument.x, mDPI);
         int y = (int) pixelToTwip(inDocument.y, mDPI);
-        mDocument.setClientZoom(TILE_SIZE, TILE_SIZE, (int) (mTileWidth / zoomFactor), (int) (mTileHeight / zoomFactor));
+        mDocument.setClientZoom(mTileSize, mTileSize, (int) (mTileWidth / zoomFactor), (int) (mTileHeight / zoomFactor));
         mDocument.postMouseEvent(type, x, y, numberOfClicks, Document.MOUSE_BUTTON_LEFT, Document.KEYBOARD_MODIFIER_NONE);
     }
 
@@ -571,10 +716,12 @@ public class LOKitTileProvider implements TileProvider {
 
     @Override
     public void postUnoCommand(String command, String arguments, boolean notifyWhenFinished) {
+        onDocumentModified();
         mDocument.postUnoCommand(command, arguments, notifyWhenFinished);
     }
 
     private void setTextSelection(int type, PointF documentCoordinate) {
+        onDocumentModified();
         int x = (int) pixelToTwip(documentCoordinate.x, mDPI);
         int y = (int) pixelToTwip(documentCoordinate.y, mDPI);
         mDocument.setTextSelection(type, x, y);
@@ -611,6 +758,7 @@ public class LOKitTileProvider implements TileProvider {
 
     @Override
     public boolean paste(String mimeType, String data) {
+        onDocumentModified();
         return mDocument.paste(mimeType, data);
     }
 
@@ -631,6 +779,7 @@ public class LOKitTileProvider implements TileProvider {
     }
 
     private void setGraphicSelection(int type, PointF documentCoordinate) {
+        onDocumentModified();
         int x = (int) pixelToTwip(documentCoordinate.x, mDPI);
         int y = (int) pixelToTwip(documentCoordinate.y, mDPI);
         if(mCallback != null)mCallback.queueEvent(new LOEvent(LOEvent.DOCUMENT_CHANGED));
@@ -0,0 +1,186 @@
+package org.libreoffice.manager;
+
+/**
+ * Scanner for the payloads of LOKit callbacks: comma separated numbers (rectangles, cell cursor
+ * tuples), lists of rectangles separated by ';' and "key=value" states. The payload is parsed in
+ * place into reusable arrays, without regular expressions and intermediate strings.
+ *
+ * Whitespace is ignored anywhere in the numbers, as the payloads are formatted with and without
+ * it. The numbers are decimal integers with an optional sign.
+ *
+ * Not thread safe, the results are valid until the next parse.
+ */
+public class PayloadParser {
+    private static final int INVALID = -1;
+
+    private int[] mNumbers = new int[8];
+    /* x, y, width and height of each rectangle */
+    private int[] mRectangles = new int[16];
+    private int mRectangleCount;
+
+    private String mPayload;
+    private int mKeyEnd;
+    private int mValueStart;
+    private int mValueEnd;
+
+    /**
+     * Parse the comma separated numbers of the payload.
+     * @return the number of numbers, -1 if the payload is empty or not a list of numbers
+     */
+    public int parseNumbers(String payload) {
+        return scanNumbers(payload, 0, payload.length());
+    }
+
+    public int getNumber(int index) {
+        return mNumbers[index];
+    }
+
+    /**
+     * Parse the rectangles separated by ';', each as four comma separated numbers: x, y, width
+     * and height. Invalid rectangles are skipped.
+     * @return the number of rectangles
+     */
+    public int parseRectangles(String payload) {
+        mRectangleCount = 0;
+        int start = 0;
+        int length = payload.length();
+        while (start < length) {
+            int end = payload.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (scanNumbers(payload, start, end) == 4) {
+                if (mRectangles.length < (mRectangleCount + 1) * 4) {
+                    int[] rectangles = new int[mRectangles.length * 2];
+                    System.arraycopy(mRectangles, 0, rectangles, 0, mRectangleCount * 4);
+                    mRectangles = rectangles;
+                }
+                System.arraycopy(mNumbers, 0, mRectangles, mRectangleCount * 4, 4);
+                mRectangleCount++;
+            }
+            start = end + 1;
+        }
+        return mRectangleCount;
+    }
+
+    public int getRectangleX(int index) {
+        return mRectangles[index * 4];
+    }
+
+    public int getRectangleY(int index) {
+        return mRectangles[index * 4 + 1];
+    }
+
+    public int getRectangleWidth(int index) {
+        return mRectangles[index * 4 + 2];
+    }
+
+    public int getRectangleHeight(int index) {
+        return mRectangles[index * 4 + 3];
+    }
+
+    /**
+     * Scan the numbers between start and end of the payload into mNumbers.
+     * @return the number of numbers, INVALID if the range is empty or contains something else
+     */
+    private int scanNumbers(String payload, int start, int end) {
+        int count = 0;
+        long value = 0;
+        boolean negative = false;
+        boolean hasSign = false;
+        boolean hasDigits = false;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? payload.charAt(i) : ',';
+            if (c == ',') {
+                if (!hasDigits) {
+                    return INVALID;
+                }
+                if (count == mNumbers.length) {
+                    int[] numbers = new int[mNumbers.length * 2];
+                    System.arraycopy(mNumbers, 0, numbers, 0, count);
+                    mNumbers = numbers;
+                }
+                mNumbers[count++] = (int) (negative ? -value : value);
+                value = 0;
+                negative = false;
+                hasSign = false;
+                hasDigits = false;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                    return INVALID;
+                }
+                hasDigits = true;
+            } else if ((c == '-' || c == '+') && !hasSign && !hasDigits) {
+                negative = c == '-';
+                hasSign = true;
+            } else if (!isWhitespace(c)) {
+                return INVALID;
+            }
+        }
+        return count;
+    }
+
+    /* The whitespace of the regular expression \s. */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Parse a "key=value" payload. The value ends at the next '=', if any.
+     * @return false if the payload has no '=' or an empty value
+     */
+    public boolean parseKeyValue(String payload) {
+        mPayload = payload;
+        mKeyEnd = payload.indexOf('=');
+        if (mKeyEnd < 0) {
+            return false;
+        }
+        mValueStart = mKeyEnd + 1;
+        mValueEnd = payload.indexOf('=', mValueStart);
+        if (mValueEnd < 0) {
+            mValueEnd = payload.length();
+        }
+        return mValueEnd > mValueStart;
+    }
+
+    public boolean keyEquals(String key) {
+        return key.length() == mKeyEnd && mPayload.regionMatches(0, key, 0, mKeyEnd);
+    }
+
+    /**
+     * Whether the value is "true", ignoring case as Boolean.parseBoolean does.
+     */
+    public boolean isValueTrue() {
+        return mValueEnd - mValueStart == 4 && mPayload.regionMatches(true, mValueStart, "true", 0, 4);
+    }
+
+    public String getValue() {
+        return mPayload.substring(mValueStart, mValueEnd);
+    }
+
+    /**
+     * Returns the value as a number.
+     * @throws NumberFormatException if the value is not a number
+     */
+    public int getValueAsInt() {
+        return parseInt(mValueStart, mValueEnd);
+    }
+
+    /**
+     * Returns the last word of the value (separated by spaces) as a number, as in the "Page 2 of 5"
+     * of .uno:StatePageNumber.
+     * @throws NumberFormatException if the word is not a number
+     */
+    public int getValueLastWordAsInt() {
+        int start = mPayload.lastIndexOf(' ', mValueEnd - 1) + 1;
+        return parseInt(Math.max(start, mValueStart), mValueEnd);
+    }
+
+    private int parseInt(int start, int end) {
+        if (scanNumbers(mPayload, start, end) != 1) {
+            throw new NumberFormatException("Not a number: " + mPayload.substring(start, end));
+        }
+        return mNumbers[0];
+    }
+}
@@ -0,0 +1,391 @@
+package org.libreoffice.manager;
+
+import android.graphics.RectF;
+import android.util.Log;
+
+import org.mozilla.gecko.gfx.IntSize;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Disk cache of rendered tiles, so reopening an unchanged document shows its content without
+ * rendering it again. Tiles are stored deflate compressed, keyed by the SHA-1 of the document
+ * content, the part, the zoom and the tile position and size. The least recently used tiles are
+ * evicted when the cache grows over its size limit.
+ *
+ * Once the document is modified the cache is not used anymore for it, as the rendered tiles
+ * don't match the document file. Invalidated tiles of the unmodified document stay on disk, but
+ * are not read again until they are written again. Tiles are written on a background thread; when
+ * it falls behind by MAX_PENDING_WRITES tiles, further tiles are not written.
+ */
+public class TileDiskCache {
+    private static final String LOGTAG = TileDiskCache.class.getSimpleName();
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAX_PENDING_WRITES = 4;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    /* file name -> file size, in access order */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long mTotalBytes = 0;
+    /* "documentKey_part" -> file name -> tile bounds in CSS pixels, guarded by this */
+    private final HashMap<String, HashMap<String, RectF>> mPartEntries = new HashMap<String, HashMap<String, RectF>>();
+    /* Files of invalidated tiles, not read until they are written again, guarded by this. */
+    private final HashSet<String> mStaleEntries = new HashSet<String>();
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    /* Pixel arrays of written tiles for reuse by the next writes, guarded by this. */
+    private final ArrayDeque<byte[]> mFreePixels = new ArrayDeque<byte[]>();
+    private int mPendingWrites = 0;
+    /* Only used on the writer thread. */
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] mWriteChunk = new byte[CHUNK_SIZE];
+    /* The read chunks are guarded by the inflater. */
+    private final Inflater mInflater = new Inflater();
+    private final byte[] mReadCompressed = new byte[CHUNK_SIZE];
+    private final byte[] mReadPixels = new byte[CHUNK_SIZE];
+    /* Content hash of the document, null if the cache is not used for the document. */
+    private volatile String mDocumentKey;
+    /* Incremented by invalidate, so tiles rendered before an invalidation are not written after it. */
+    private int mGeneration = 0;
+
+    public TileDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        loadEntries();
+    }
+
+    private synchronized void loadEntries() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(LOGTAG, "Can't create tile cache directory " + mDirectory);
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            mEntries.put(file.getName(), file.length());
+            mTotalBytes += file.length();
+            RectF bounds = parseBounds(file.getName());
+            if (bounds != null) {
+                addToPart(file.getName(), bounds);
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Use the cache for the document in the given file.
+     */
+    public void openDocument(File file) {
+        mDocumentKey = null;
+        synchronized (this) {
+            mStaleEntries.clear();
+        }
+        try {
+            mDocumentKey = hashFile(file);
+        } catch (IOException | NoSuchAlgorithmException exception) {
+            Log.w(LOGTAG, "Can't hash document, not using the tile cache: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * The document was modified, so the rendered tiles don't belong to its file anymore.
+     */
+    public void setDocumentModified() {
+        mDocumentKey = null;
+    }
+
+    public boolean isEnabled() {
+        return mDocumentKey != null;
+    }
+
+    public void close() {
+        mDocumentKey = null;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDeflater.end();
+            }
+        });
+        mWriter.shutdown();
+        synchronized (mInflater) {
+            mInflater.end();
+        }
+    }
+
+    /**
+     * Read the cached tile into the buffer.
+     * @return true if the tile was found and read completely.
+     */
+    public boolean read(int part, float x, float y, IntSize tileSize, float zoom, ByteBuffer buffer) {
+        String documentKey = mDocumentKey;
+        if (documentKey == null) {
+            return false;
+        }
+        String name = getFileName(documentKey, part, x, y, tileSize, zoom);
+        File file = new File(mDirectory, name);
+        synchronized (this) {
+            if (mEntries.get(name) == null || mStaleEntries.contains(name)) {
+                return false;
+            }
+        }
+
+        synchronized (mInflater) {
+            if (!inflate(file, buffer)) {
+                remove(name);
+                return false;
+            }
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Inflate the file into the buffer through the read chunks, guarded by mInflater.
+     * @return false if the file can't be read or doesn't hold exactly the pixels of the buffer.
+     */
+    private boolean inflate(File file, ByteBuffer buffer) {
+        buffer.rewind();
+        mInflater.reset();
+        try (InputStream input = new FileInputStream(file)) {
+            while (!mInflater.finished()) {
+                if (mInflater.needsInput()) {
+                    int count = input.read(mReadCompressed);
+                    if (count < 0) {
+                        return false;
+                    }
+                    mInflater.setInput(mReadCompressed, 0, count);
+                }
+                int count = mInflater.inflate(mReadPixels);
+                if (count > buffer.remaining() || mInflater.needsDictionary()) {
+                    return false;
+                }
+                buffer.put(mReadPixels, 0, count);
+            }
+        } catch (IOException | DataFormatException exception) {
+            return false;
+        }
+        boolean complete = !buffer.hasRemaining();
+        buffer.rewind();
+        return complete;
+    }
+
+    /**
+     * Store a copy of the rendered tile. The buffer can be reused when this returns. The tile is
+     * dropped if MAX_PENDING_WRITES tiles are still waiting to be written.
+     */
+    public void write(int part, float x, float y, IntSize tileSize, float zoom, ByteBuffer buffer) {
+        String documentKey = mDocumentKey;
+        if (documentKey == null) {
+            return;
+        }
+        final String name = getFileName(documentKey, part, x, y, tileSize, zoom);
+        final RectF bounds = new RectF((int) x / zoom, (int) y / zoom, ((int) x + tileSize.width) / zoom,
+                ((int) y + tileSize.height) / zoom);
+        final byte[] pixels;
+        final int generation;
+        synchronized (this) {
+            if (mPendingWrites >= MAX_PENDING_WRITES) {
+                return;
+            }
+            mPendingWrites++;
+            byte[] freePixels = mFreePixels.poll();
+            pixels = freePixels != null && freePixels.length == buffer.limit() ? freePixels : new byte[buffer.limit()];
+            generation = mGeneration;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.rewind();
+        source.get(pixels);
+
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFile(name, bounds, pixels, generation);
+                } finally {
+                    synchronized (TileDiskCache.this) {
+                        mPendingWrites--;
+                        mFreePixels.push(pixels);
+                    }
+                }
+            }
+        });
+    }
+
+    /* Called on the writer thread. */
+    private void writeFile(String name, RectF bounds, byte[] pixels, int generation) {
+        File file = new File(mDirectory, name);
+        File temporaryFile = new File(mDirectory, name + TEMPORARY_SUFFIX);
+        mDeflater.reset();
+        mDeflater.setInput(pixels);
+        mDeflater.finish();
+        try (OutputStream output = new FileOutputStream(temporaryFile)) {
+            while (!mDeflater.finished()) {
+                int count = mDeflater.deflate(mWriteChunk);
+                output.write(mWriteChunk, 0, count);
+            }
+        } catch (IOException exception) {
+            Log.w(LOGTAG, "Can't write tile to the cache: " + exception.getMessage());
+            temporaryFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (generation != mGeneration || !temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                return;
+            }
+            Long previousSize = mEntries.put(name, file.length());
+            if (previousSize != null) {
+                mTotalBytes -= previousSize;
+            }
+            mTotalBytes += file.length();
+            addToPart(name, bounds);
+            mStaleEntries.remove(name);
+            trim();
+        }
+    }
+
+    /**
+     * The tiles of the part which intersect the rect (in CSS pixels) were invalidated. The
+     * document file is unchanged, so they stay on disk for the next time it is opened, but they
+     * are not read again before they are written again.
+     */
+    public synchronized void invalidate(int part, RectF cssRect) {
+        String documentKey = mDocumentKey;
+        if (documentKey == null) {
+            return;
+        }
+        mGeneration++;
+        HashMap<String, RectF> partEntries = mPartEntries.get(documentKey + "_" + part);
+        if (partEntries == null) {
+            return;
+        }
+        for (Map.Entry<String, RectF> entry : partEntries.entrySet()) {
+            if (RectF.intersects(cssRect, entry.getValue())) {
+                mStaleEntries.add(entry.getKey());
+            }
+        }
+    }
+
+    /* Bounds in CSS pixels of the tile file "documentKey_part_zoom_x_y_width_height", null if it's not one. */
+    private static RectF parseBounds(String name) {
+        String[] values = name.split("_");
+        if (values.length != 7) {
+            return null;
+        }
+        try {
+            float zoom = Float.intBitsToFloat(Integer.parseInt(values[2], 16));
+            float x = Integer.parseInt(values[3]);
+            float y = Integer.parseInt(values[4]);
+            float width = Integer.parseInt(values[5]);
+            float height = Integer.parseInt(values[6]);
+            return new RectF(x / zoom, y / zoom, (x + width) / zoom, (y + height) / zoom);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    /* "documentKey_part" of the file name. */
+    private static String getPartKey(String name) {
+        int end = name.indexOf('_', name.indexOf('_') + 1);
+        return end < 0 ? name : name.substring(0, end);
+    }
+
+    private void addToPart(String name, RectF bounds) {
+        String partKey = getPartKey(name);
+        HashMap<String, RectF> partEntries = mPartEntries.get(partKey);
+        if (partEntries == null) {
+            partEntries = new HashMap<String, RectF>();
+            mPartEntries.put(partKey, partEntries);
+        }
+        partEntries.put(name, bounds);
+    }
+
+    private void removeFromPart(String name) {
+        String partKey = getPartKey(name);
+        HashMap<String, RectF> partEntries = mPartEntries.get(partKey);
+        if (partEntries != null) {
+            partEntries.remove(name);
+            if (partEntries.isEmpty()) {
+                mPartEntries.remove(partKey);
+            }
+        }
+        mStaleEntries.remove(name);
+    }
+
+    private synchronized void remove(String name) {
+        Long size = mEntries.remove(name);
+        if (size != null) {
+            mTotalBytes -= size;
+            removeFromPart(name);
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    /* Evict the least recently used tiles until the cache fits in its size limit. */
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            mTotalBytes -= entry.getValue();
+            removeFromPart(entry.getKey());
+            new File(mDirectory, entry.getKey()).delete();
+            iterator.remove();
+        }
+    }
+
+    private static String getFileName(String documentKey, int part, float x, float y, IntSize tileSize, float zoom) {
+        return documentKey + "_" + part + "_" + Integer.toHexString(Float.floatToIntBits(zoom))
+                + "_" + (int) x + "_" + (int) y + "_" + tileSize.width + "_" + tileSize.height;
+    }
+
+    private static String hashFile(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        byte[] data = new byte[64 * 1024];
+        try (InputStream input = new FileInputStream(file)) {
+            int count;
+            while ((count = input.read(data)) > 0) {
+                digest.update(data, 0, count);
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte value : digest.digest()) {
+            hash.append(String.format("%02x", value));
+        }
+        return hash.toString();
+    }
+}
@@ -225,6 +225,12 @@ public class ToolbarController implements Toolbar.OnMenuItemClickListener {
         } else if (itemId == R.id.action_UNO_commands) {
             mContext.showUNOCommandsToolbar();
             return true;
+        } else if (itemId == R.id.action_record_viewport) {
+            mContext.toggleViewportRecording();
+            return true;
+        } else if (itemId == R.id.action_record_callbacks) {
+            mContext.toggleCallbackRecording();
+            return true;
         }
         return false;
     }
@@ -243,6 +249,8 @@ public class ToolbarController implements Toolbar.OnMenuItemClickListener {
             hideItem(R.id.action_save);
         }
         mMainMenu.findItem(R.id.action_parts).setVisible(mContext.isDrawerEnabled());
+        mMainMenu.findItem(R.id.action_record_viewport).setVisible(MainActivity.isDeveloperMode());
+        mMainMenu.findItem(R.id.action_record_callbacks).setVisible(MainActivity.isDeveloperMode());
     }
 
     public void showItem(final int item){
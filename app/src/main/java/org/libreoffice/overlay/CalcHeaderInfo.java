@@ -0,0 +1,45 @@
+package org.libreoffice.overlay;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+
+/**
+ * The row and column headers of a spreadsheet, as sent by LOKit in the .uno:ViewRowColumnHeaders
+ * JSON: the label and the end position (in twips) of each row and column.
+ */
+class CalcHeaderInfo {
+    final ArrayList<String> rowLabels = new ArrayList<String>();
+    final ArrayList<Float> rowDimens = new ArrayList<Float>();
+    final ArrayList<String> columnLabels = new ArrayList<String>();
+    final ArrayList<Float> columnDimens = new ArrayList<Float>();
+
+    private CalcHeaderInfo() {
+    }
+
+    /**
+     * Returns the parsed headers, null if the JSON is invalid.
+     */
+    static CalcHeaderInfo parse(String headers) {
+        CalcHeaderInfo headerInfo = new CalcHeaderInfo();
+        try {
+            JSONObject collectiveResult = new JSONObject(headers);
+            JSONArray rowResult = collectiveResult.getJSONArray("rows");
+            for (int i = 0; i < rowResult.length(); i++) {
+                headerInfo.rowLabels.add(rowResult.getJSONObject(i).getString("text"));
+                headerInfo.rowDimens.add(BigDecimal.valueOf(rowResult.getJSONObject(i).getLong("size")).floatValue());
+            }
+            JSONArray columnResult = collectiveResult.getJSONArray("columns");
+            for (int i = 0; i < columnResult.length(); i++) {
+                headerInfo.columnLabels.add(columnResult.getJSONObject(i).getString("text"));
+                headerInfo.columnDimens.add(BigDecimal.valueOf(columnResult.getJSONObject(i).getLong("size")).floatValue());
+            }
+            return headerInfo;
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -17,7 +17,6 @@ import android.widget.Button;
 import android.widget.PopupWindow;
 import android.widget.TextView;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.libreoffice.application.TheApplication;
@@ -26,8 +25,6 @@ import org.libreoffice.data.LOEvent;
 import org.libreoffice.ui.MainActivity;
 import org.libreoffice.R;
 import org.mozilla.gecko.gfx.LayerView;
-import java.math.BigDecimal;
-import java.util.ArrayList;
 import static org.libreoffice.manager.SearchController.addProperty;
 
 public class CalcHeadersController {
@@ -211,7 +208,7 @@ public class CalcHeadersController {
     }
 
     public void setHeaders(String headers) {
-        HeaderInfo parsedHeaders = parseHeaderInfo(headers);
+        CalcHeaderInfo parsedHeaders = CalcHeaderInfo.parse(headers);
         if (parsedHeaders != null) {
             mCalcRowHeadersView.setHeaders(parsedHeaders.rowLabels, parsedHeaders.rowDimens);
             mCalcColumnHeadersView.setHeaders(parsedHeaders.columnLabels, parsedHeaders.columnDimens);
@@ -231,27 +228,6 @@ public class CalcHeadersController {
         });
     }
 
-    private HeaderInfo parseHeaderInfo(String headers) {
-        HeaderInfo headerInfo = new HeaderInfo();
-        try {
-            JSONObject collectiveResult = new JSONObject(headers);
-            JSONArray rowResult = collectiveResult.getJSONArray("rows");
-            for (int i = 0; i < rowResult.length(); i++) {
-                headerInfo.rowLabels.add(rowResult.getJSONObject(i).getString("text"));
-                headerInfo.rowDimens.add(BigDecimal.valueOf(rowResult.getJSONObject(i).getLong("size")).floatValue());
-            }
-            JSONArray columnResult = collectiveResult.getJSONArray("columns");
-            for (int i = 0; i < columnResult.length(); i++) {
-                headerInfo.columnLabels.add(columnResult.getJSONObject(i).getString("text"));
-                headerInfo.columnDimens.add(BigDecimal.valueOf(columnResult.getJSONObject(i).getLong("size")).floatValue());
-            }
-            return headerInfo;
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
     public void showHeaderSelection(RectF cellCursorRect) {
         mCalcRowHeadersView.setHeaderSelection(cellCursorRect);
         mCalcColumnHeadersView.setHeaderSelection(cellCursorRect);
@@ -267,17 +243,4 @@ public class CalcHeadersController {
         return mCalcColumnHeadersView.pendingRowOrColumnSelectionToShowUp()
                 || mCalcRowHeadersView.pendingRowOrColumnSelectionToShowUp();
     }
-
-    private class HeaderInfo {
-        ArrayList<String> rowLabels;
-        ArrayList<Float> rowDimens;
-        ArrayList<String> columnLabels;
-        ArrayList<Float> columnDimens;
-        private HeaderInfo() {
-            rowLabels = new ArrayList<String>();
-            rowDimens = new ArrayList<Float>();
-            columnDimens = new ArrayList<Float>();
-            columnLabels = new ArrayList<String>();
-        }
-    }
 }
@@ -59,6 +59,13 @@ public class DocumentOverlay {
         mDocumentOverlayView.initialize(layerView, callback);
     }
 
+    /**
+     * For stand-ins without a view, which override the methods they are called with.
+     */
+    protected DocumentOverlay() {
+        mDocumentOverlayView = null;
+    }
+
     public void setPartPageRectangles(List<RectF> rectangles) {
         mDocumentOverlayView.setPartPageRectangles(rectangles);
     }
@@ -8,6 +8,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.net.Uri;
 import android.os.Build;
@@ -35,8 +36,11 @@ import org.libreoffice.callback.ZoomCallback;
 import org.libreoffice.canvas.SelectionHandle;
 import org.libreoffice.data.LOEvent;
 import org.libreoffice.data.TileIdentifier;
+import org.libreoffice.manager.CallbackTraceRecorder;
+import org.libreoffice.manager.CallbackTraceReplayer;
 import org.libreoffice.manager.InvalidationHandler;
 import org.libreoffice.manager.LOKitInputConnectionHandler;
+import org.libreoffice.manager.LOKitThread;
 import org.libreoffice.R;
 import org.libreoffice.data.SettingsListenerModel;
 import org.libreoffice.manager.ToolbarController;
@@ -52,12 +56,17 @@ import org.libreoffice.utils.FileUtilities;
 import org.libreoffice.utils.ThumbnailCreator;
 import org.mozilla.gecko.ZoomConstraints;
 import org.mozilla.gecko.gfx.CairoImage;
+import org.mozilla.gecko.gfx.CairoUtils;
 import org.mozilla.gecko.gfx.ComposedTileLayer;
 import org.mozilla.gecko.gfx.GeckoLayerClient;
 import org.mozilla.gecko.gfx.ImmutableViewportMetrics;
 import org.mozilla.gecko.gfx.JavaPanZoomController;
 import org.mozilla.gecko.gfx.LayerView;
+import org.mozilla.gecko.gfx.MetricsRegistry;
+import org.mozilla.gecko.gfx.SolidColorCairoImage;
 import org.mozilla.gecko.gfx.SubTile;
+import org.mozilla.gecko.gfx.TileReplayHarness;
+import org.mozilla.gecko.gfx.ViewportRecorder;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -76,6 +85,11 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
 
     private static final int REQUEST_CODE_SAVEAS = 12345;
     private static final int REQUEST_CODE_EXPORT_TO_PDF = 12346;
+    /* Number of rendered tiles handed to the GL side per transaction. */
+    private static final int TILE_RENDER_BATCH_SIZE = 4;
+    /* How long onDestroy waits for LOKitThread to close the document. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+    private static final MetricsRegistry.Counter sSkippedUploads = MetricsRegistry.get().counter(MetricsRegistry.TEXTURE_UPLOADS_SKIPPED);
     private GeckoLayerClient mLayerClient;
     private static boolean mIsExperimentalMode;
     private static boolean mIsDeveloperMode;
@@ -100,6 +114,7 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
     private String mPassword;
     private boolean mPasswordProtected;
     private boolean mbSkipNextRefresh;
+    private final LOKitThread mLOKitThread = new LOKitThread(this::processEvent);
 
     public GeckoLayerClient getLayerClient() {
         return mLayerClient;
@@ -118,6 +133,18 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
      */
     @Override
     public void queueEvent(LOEvent event) {
+        if (event.mType == LOEvent.SAVE_PASSWORD) {
+            // LOKitThread is blocked waiting for the password, so handle it right away
+            processEvent(event);
+            return;
+        }
+        mLOKitThread.queueEvent(event);
+    }
+
+    /**
+     * Process the event, called on LOKitThread.
+     */
+    private void processEvent(LOEvent event) {
         switch (event.mType) {
             case LOEvent.LOAD:
                 loadDocument(event.filePath);
@@ -133,6 +160,9 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
                 break;
             case LOEvent.CLOSE:
                 closeDocument();
+                if (isFinishing()) { // Not an orientation change
+                    deleteTemporaryFiles();
+                }
                 break;
             case LOEvent.SIZE_CHANGED:
                 redraw(false);
@@ -155,6 +185,9 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
             case LOEvent.TILE_REEVALUATION_REQUEST:
                 tileReevaluationRequest(event.mComposedTileLayer);
                 break;
+            case LOEvent.TRIM_MEMORY:
+                event.mComposedTileLayer.trimMemory(event.mTrimLevel);
+                break;
             case LOEvent.CHANGE_HANDLE_POSITION:
                 changeHandlePosition(event.mHandleType, event.mDocumentCoordinate);
                 break;
@@ -208,6 +241,7 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mLOKitThread.start();
         SettingsListenerModel.getInstance().setListener(this);
         updatePreferences();
         setContentView(R.layout.activity_main);
@@ -484,6 +518,7 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
     protected void onResume() {
         super.onResume();
         updatePreferences();
+        mLayerClient.getView().setPerformanceHudVisible(isDeveloperMode());
         if (mToolbarController.getEditModeStatus() && isExperimentalMode()) {
             mToolbarController.switchToEditMode();
         } else {
@@ -513,19 +548,29 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
 
     @Override
     protected void onDestroy() {
+        // LOKitThread closes the document and deletes the temporary files, wait for it so the
+        // next activity doesn't use LOKit at the same time
         queueEvent(new LOEvent(LOEvent.CLOSE));
+        try {
+            mLOKitThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         mLayerClient.destroy();
         super.onDestroy();
+    }
 
-        if (isFinishing()) { // Not an orientation change
-            if (mTempFile != null) {
-                // noinspection ResultOfMethodCallIgnored
-                mTempFile.delete();
-            }
-            if (mTempSlideShowFile != null && mTempSlideShowFile.exists()) {
-                // noinspection ResultOfMethodCallIgnored
-                mTempSlideShowFile.delete();
-            }
+    /**
+     * Delete the copies of the document, called on LOKitThread once the document is closed.
+     */
+    private void deleteTemporaryFiles() {
+        if (mTempFile != null) {
+            // noinspection ResultOfMethodCallIgnored
+            mTempFile.delete();
+        }
+        if (mTempSlideShowFile != null && mTempSlideShowFile.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            mTempSlideShowFile.delete();
         }
     }
     @Override
@@ -788,6 +833,64 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
         mTileProvider.removePart();
     }
 
+    /**
+     * Start recording the viewport changes of the gestures, or stop the recording and replay it
+     * with the TileReplayHarness. The trace and the CSV of the replayed frames are written to the
+     * cache directory.
+     */
+    public void toggleViewportRecording() {
+        if (!mLayerClient.isRecordingViewport()) {
+            if (mLayerClient.startViewportRecording()) {
+                Toast.makeText(this, R.string.message_viewport_recording, Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+        final ViewportRecorder recorder = mLayerClient.stopViewportRecording();
+        new Thread(() -> {
+            File trace = new File(getCacheDir(), "viewport-" + System.currentTimeMillis() + ".trace");
+            try {
+                recorder.save(trace);
+                TileReplayHarness.Report report = new TileReplayHarness(getApplicationContext()).replay(trace);
+                report.writeCsv(new File(trace.getPath() + ".csv"));
+                runOnUiThread(() -> Toast.makeText(this, report.toString(), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> Toast.makeText(this, R.string.message_viewport_replay_failed, Toast.LENGTH_SHORT).show());
+            }
+        }).start();
+    }
+
+    /**
+     * Start recording the LOKit callbacks, or stop the recording and replay it in the background.
+     */
+    public void toggleCallbackRecording() {
+        final CallbackTraceRecorder recorder = mInvalidationHandler.getTraceRecorder();
+        if (recorder == null) {
+            File trace = new File(getCacheDir(), "callbacks-" + System.currentTimeMillis() + ".trace");
+            try {
+                mInvalidationHandler.setTraceRecorder(new CallbackTraceRecorder(trace));
+                Toast.makeText(this, R.string.message_callback_recording, Toast.LENGTH_SHORT).show();
+            } catch (IOException e) {
+                e.printStackTrace();
+                Toast.makeText(this, R.string.message_callback_replay_failed, Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+        mInvalidationHandler.setTraceRecorder(null);
+        final CallbackTraceReplayer replayer = new CallbackTraceReplayer(this);
+        new Thread(() -> {
+            try {
+                recorder.close();
+                CallbackTraceReplayer.Report report = replayer.replay(recorder.getFile());
+                report.writeCsv(new File(recorder.getFile().getPath() + ".csv"));
+                runOnUiThread(() -> Toast.makeText(this, report.toString(), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> Toast.makeText(this, R.string.message_callback_replay_failed, Toast.LENGTH_SHORT).show());
+            }
+        }).start();
+    }
+
     public void showSettings() {
         startActivity(new Intent(getApplicationContext(), SettingsActivity.class));
     }
@@ -806,8 +909,10 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
     }
 
     public void promptForPassword() {
-        PasswordDialogFragment passwordDialogFragment = new PasswordDialogFragment(this);
-        passwordDialogFragment.show(getSupportFragmentManager(), "PasswordDialogFragment");
+        TheApplication.getMainHandler().post(() -> {
+            PasswordDialogFragment passwordDialogFragment = new PasswordDialogFragment(this);
+            passwordDialogFragment.show(getSupportFragmentManager(), "PasswordDialogFragment");
+        });
     }
     public void setPassword() {
         mTileProvider.setDocumentPassword("file://" + mTempFile.getPath(), mPassword);
@@ -1003,6 +1108,10 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
 
     /**
      * Viewport changed, Recheck if tiles need to be added / removed.
+     *
+     * The new tiles are rendered closest to the viewport centre first and handed to the GL side
+     * in batches of TILE_RENDER_BATCH_SIZE. Tiles which scrolled out of the viewport (or belong to
+     * an old zoom) before they were rendered are cancelled and removed from the layer.
      */
     private void tileReevaluationRequest(ComposedTileLayer composedTileLayer) {
         if (mTileProvider == null) {
@@ -1014,44 +1123,135 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
         composedTileLayer.addNewTiles(tiles);
         mLayerClient.endDrawing();
 
+        composedTileLayer.sortByRenderOrder(tiles);
+
+        List<SubTile> batchTiles = new ArrayList<SubTile>(TILE_RENDER_BATCH_SIZE);
+        List<CairoImage> batchImages = new ArrayList<CairoImage>(TILE_RENDER_BATCH_SIZE);
+        List<Long> batchHashes = new ArrayList<Long>(TILE_RENDER_BATCH_SIZE);
+        List<SubTile> cancelledTiles = new ArrayList<SubTile>();
         for (SubTile tile : tiles) {
             TileIdentifier tileId = tile.id;
+            if (!composedTileLayer.isStillValid(tileId)) {
+                cancelledTiles.add(tile);
+                continue;
+            }
             CairoImage image = mTileProvider.createTile(tileId.x, tileId.y, tileId.size, tileId.zoom);
-            mLayerClient.beginDrawing();
             if (image != null) {
-                tile.setImage(image);
+                batchTiles.add(tile);
+                batchImages.add(image);
+                batchHashes.add(hashTileImage(image));
+            }
+            if (batchTiles.size() >= TILE_RENDER_BATCH_SIZE) {
+                publishTiles(batchTiles, batchImages, batchHashes);
             }
-            mLayerClient.endDrawing();
-            mLayerClient.forceRender();
         }
+        publishTiles(batchTiles, batchImages, batchHashes);
 
         mLayerClient.beginDrawing();
+        composedTileLayer.removeTiles(cancelledTiles);
         composedTileLayer.markTiles();
         composedTileLayer.clearMarkedTiles();
+        mLayerClient.enforceTileMemoryBudget();
         mLayerClient.endDrawing();
         mLayerClient.forceRender();
     }
 
+    /**
+     * Set the rendered images of a batch in one transaction and clear the batch.
+     */
+    private void publishTiles(List<SubTile> tiles, List<CairoImage> images, List<Long> hashes) {
+        if (tiles.isEmpty()) {
+            return;
+        }
+        mLayerClient.beginDrawing();
+        for (int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).setImage(images.get(i), hashes.get(i));
+        }
+        mLayerClient.endDrawing();
+        mLayerClient.forceRender();
+        tiles.clear();
+        images.clear();
+        hashes.clear();
+    }
+
+    /**
+     * Returns the hash of an image of a whole tile for SubTile.hasSameContent. The whole tile is
+     * only compared for solid colour content, other content takes part updates, so the pixels of
+     * other images are not hashed and 0 (unknown) is returned.
+     */
+    private static long hashTileImage(CairoImage image) {
+        return image instanceof SolidColorCairoImage ? CairoUtils.hashImage(image) : 0;
+    }
+
     /**
      * Invalidate tiles that intersect the input rect.
+     *
+     * Only the part of each tile which intersects the rect is rendered again and applied to the
+     * existing tile content. Tiles without content yet are rendered completely. Images which render
+     * to the content the tile has already, as a blinking cursor often does, are not uploaded again.
      */
     private void tileInvalidation(RectF rect) {
         if (mLayerClient == null || mTileProvider == null) {
             return;
         }
 
-        mLayerClient.beginDrawing();
+        mTileProvider.invalidateCachedTiles(rect);
 
         List<SubTile> tiles = new ArrayList<SubTile>();
-        mLayerClient.invalidateTiles(tiles, rect);
+        List<Rect> partRects = new ArrayList<Rect>();
 
+        mLayerClient.beginDrawing();
+        mLayerClient.invalidateTiles(tiles, rect);
         for (SubTile tile : tiles) {
-            CairoImage image = mTileProvider.createTile(tile.id.x, tile.id.y, tile.id.size, tile.id.zoom);
-            tile.setImage(image);
-            tile.invalidate();
+            // null renders the whole tile
+            partRects.add(tile.canUpdatePart() ? tile.getPartRect(rect) : null);
         }
         mLayerClient.endDrawing();
-        mLayerClient.forceRender();
+
+        List<CairoImage> images = new ArrayList<CairoImage>(tiles.size());
+        for (int i = 0; i < tiles.size(); i++) {
+            TileIdentifier tileId = tiles.get(i).id;
+            Rect partRect = partRects.get(i);
+            if (partRect == null) {
+                images.add(mTileProvider.createTile(tileId.x, tileId.y, tileId.size, tileId.zoom));
+            } else {
+                images.add(mTileProvider.createTilePart(tileId.x, tileId.y, tileId.size, tileId.zoom, partRect));
+            }
+        }
+
+        long[] hashes = new long[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            CairoImage image = images.get(i);
+            if (image != null) {
+                hashes[i] = partRects.get(i) != null ? CairoUtils.hashImage(image) : hashTileImage(image);
+            }
+        }
+
+        boolean changed = false;
+        mLayerClient.beginDrawing();
+        for (int i = 0; i < tiles.size(); i++) {
+            SubTile tile = tiles.get(i);
+            CairoImage image = images.get(i);
+            if (image == null) {
+                continue;
+            }
+            Rect partRect = partRects.get(i);
+            if (tile.hasSameContent(partRect, hashes[i])) {
+                image.destroy();
+                sSkippedUploads.increment();
+                continue;
+            }
+            if (partRect == null) {
+                tile.setImage(image, hashes[i]);
+            } else {
+                tile.setImagePart(image, partRect, hashes[i]);
+            }
+            changed = true;
+        }
+        mLayerClient.endDrawing();
+        if (changed) {
+            mLayerClient.forceRender();
+        }
     }
 
     /**
@@ -1155,6 +1355,7 @@ public class MainActivity extends AppCompatActivity implements SettingsListenerM
         mTileProvider = new LOKitTileProvider(this, mInvalidationHandler, filePath, this);
         if (mTileProvider.isReady()) {
             showProgressSpinner();
+            mLayerClient.setTileSize(mTileProvider.getTileSize());
             updateZoomConstraints();
             refresh(true);
             hideProgressSpinner();
@@ -1,12 +1,28 @@
 package org.libreoffice.ui;
 
 import android.app.Activity;
+import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.preference.CheckBoxPreference;
 import android.preference.PreferenceFragment;
+import android.widget.Toast;
+import androidx.core.content.FileProvider;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.libreoffice.R;
+import org.libreoffice.application.CustomConstant;
 import org.libreoffice.data.SettingsListenerModel;
+import org.libreoffice.utils.DeviceUtils;
+import org.mozilla.gecko.gfx.MetricsRegistry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 
 public class SettingsActivity extends Activity {
     @Override
@@ -22,6 +38,49 @@ public class SettingsActivity extends Activity {
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.preferences);
+            // the low memory mode defaults to on on low RAM devices, which the xml can't express
+            SharedPreferences preferences = getPreferenceScreen().getSharedPreferences();
+            if (!preferences.contains(CustomConstant.LOW_MEMORY_TILES_PREFS_KEY)) {
+                CheckBoxPreference lowMemoryTiles = (CheckBoxPreference) findPreference(CustomConstant.LOW_MEMORY_TILES_PREFS_KEY);
+                lowMemoryTiles.setChecked(DeviceUtils.isLowRamDevice());
+            }
+            findPreference(CustomConstant.EXPORT_RENDER_METRICS_PREFS_KEY).setOnPreferenceClickListener(preference -> {
+                exportRenderMetrics();
+                return true;
+            });
+        }
+
+        /**
+         * Write the MetricsRegistry with the device it was measured on to a JSON file, and share it.
+         */
+        private void exportRenderMetrics() {
+            Activity activity = getActivity();
+            File file = new File(activity.getExternalFilesDir(null), "render-metrics-" + System.currentTimeMillis() + ".json");
+            try {
+                JSONObject json = new JSONObject();
+                json.put("timestamp", System.currentTimeMillis());
+                json.put("manufacturer", Build.MANUFACTURER);
+                json.put("model", Build.MODEL);
+                json.put("sdk", Build.VERSION.SDK_INT);
+                json.put("lowRamDevice", DeviceUtils.isLowRamDevice());
+                json.put("metrics", MetricsRegistry.get().toJson());
+                Writer writer = new FileWriter(file);
+                try {
+                    writer.write(json.toString(2));
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException | JSONException e) {
+                e.printStackTrace();
+                Toast.makeText(activity, R.string.message_render_metrics_export_failed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Uri uri = FileProvider.getUriForFile(activity, activity.getPackageName() + ".fileprovider", file);
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_STREAM, uri);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(Intent.createChooser(intent, getString(R.string.pref_export_render_metrics)));
         }
 
         @Override
@@ -1,5 +1,7 @@
 package org.libreoffice.utils;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.util.DisplayMetrics;
 import org.libreoffice.application.TheApplication;
 
@@ -9,4 +11,12 @@ public class DeviceUtils {
         return metrics.density * 160;
     }
 
+    /**
+     * Whether the device has little memory, so the app should trade quality for memory.
+     */
+    public static boolean isLowRamDevice() {
+        ActivityManager activityManager = (ActivityManager) TheApplication.getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.isLowRamDevice() || activityManager.getMemoryClass() < 128;
+    }
+
 }
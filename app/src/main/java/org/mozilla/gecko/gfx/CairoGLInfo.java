@@ -7,17 +7,22 @@ public class CairoGLInfo {
     public final int internalFormat;
     public final int format;
     public final int type;
+    /* Size of a pixel in the uploaded buffer, as read by GL. */
+    public final int bytesPerPixel;
 
     public CairoGLInfo(int cairoFormat) {
         switch (cairoFormat) {
             case CairoImage.FORMAT_ARGB32:
                 internalFormat = format = GL10.GL_RGBA; type = GL10.GL_UNSIGNED_BYTE;
+                bytesPerPixel = 4;
                 break;
             case CairoImage.FORMAT_RGB24:
                 internalFormat = format = GL10.GL_RGB; type = GL10.GL_UNSIGNED_BYTE;
+                bytesPerPixel = 3;
                 break;
             case CairoImage.FORMAT_RGB16_565:
                 internalFormat = format = GL10.GL_RGB; type = GL10.GL_UNSIGNED_SHORT_5_6_5;
+                bytesPerPixel = 2;
                 break;
             case CairoImage.FORMAT_A8:
             case CairoImage.FORMAT_A1:
@@ -1,6 +1,11 @@
 package org.mozilla.gecko.gfx;
 
 import android.graphics.Bitmap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 
 /**
  * Utility methods useful when displaying Cairo bitmaps using OpenGL ES.
@@ -42,5 +47,51 @@ public class CairoUtils {
                 throw new RuntimeException("Unknown CairoImage format");
         }
     }
-}
 
+    /**
+     * Returns a fast 64 bit hash of the pixels, size and format of the image, to recognize an
+     * image rendered again with the same content. Never returns 0, which stands for unknown.
+     */
+    public static long hashImage(CairoImage image) {
+        IntSize size = image.getSize();
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, ((long) size.width << 32) | size.height);
+        hash = mix(hash, image.getFormat());
+        if (image instanceof SolidColorCairoImage) {
+            hash = mix(hash, ((SolidColorCairoImage) image).getColor());
+        } else if (image.getBuffer() != null) {
+            ByteBuffer buffer = image.getBuffer().duplicate();
+            int byteCount = Math.min(buffer.capacity(), size.getArea() * bitsPerPixelForCairoFormat(image.getFormat()) / 8);
+            buffer.clear();
+            LongBuffer longs = buffer.asLongBuffer();
+            int longCount = byteCount / 8;
+            for (int i = 0; i < longCount; i++) {
+                hash = mix(hash, longs.get(i));
+            }
+            for (int i = longCount * 8; i < byteCount; i++) {
+                hash = mix(hash, buffer.get(i));
+            }
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Convert FORMAT_ARGB32 pixels (in the byte order R, G, B, A as uploaded to GL) to
+     * FORMAT_RGB16_565 pixels for GL_UNSIGNED_SHORT_5_6_5, dropping the alpha. Only for opaque
+     * content.
+     */
+    public static void convertARGB32ToRGB565(ByteBuffer source, ByteBuffer destination, int pixelCount) {
+        IntBuffer pixels = source.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        ShortBuffer converted = destination.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < pixelCount; i++) {
+            int pixel = pixels.get(i);
+            converted.put(i, (short) (((pixel >>> 16) & 0xf800) | ((pixel >>> 13) & 0x07e0) | ((pixel >>> 11) & 0x001f)));
+        }
+    }
+}
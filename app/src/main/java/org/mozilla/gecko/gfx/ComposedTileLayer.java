@@ -5,40 +5,98 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.RectF;
 import android.graphics.Region;
+import android.opengl.GLES20;
 import android.util.Log;
+import android.view.Choreographer;
 
+import org.libreoffice.application.TheApplication;
 import org.libreoffice.callback.EventCallback;
 import org.libreoffice.data.LOEvent;
 import org.libreoffice.data.TileIdentifier;
+import org.libreoffice.kit.DirectBufferAllocator;
 import org.mozilla.gecko.util.FloatUtils;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public abstract class ComposedTileLayer extends Layer implements ComponentCallbacks2 {
+public abstract class ComposedTileLayer extends Layer implements ComponentCallbacks2, Choreographer.FrameCallback {
     private static final String LOGTAG = ComposedTileLayer.class.getSimpleName();
 
-    protected final List<SubTile> tiles = new ArrayList<SubTile>();
+    /* Guarded by the tiles lock, replaced when the tile size changes. */
+    protected TileGrid tiles;
+    private final List<SubTile> tilesMarkedForRemoval = new ArrayList<SubTile>();
+    /*
+     * Tiles replaced by a zoom change or a reset. They stay drawable below the tiles until the
+     * visible viewport is uploaded at the current zoom, then they are released together.
+     */
+    private final List<SubTile> staleTiles = new ArrayList<SubTile>();
+
+    private static final int DEFAULT_TILE_SIZE = 256;
 
-    protected final IntSize tileSize;
+    protected volatile IntSize tileSize;
     private final ReadWriteLock tilesReadWriteLock = new ReentrantReadWriteLock();
     private final Lock tilesReadLock = tilesReadWriteLock.readLock();
     private final Lock tilesWriteLock = tilesReadWriteLock.writeLock();
 
-    protected RectF currentViewport = new RectF();
-    protected float currentZoom = 1.0f;
-    protected RectF currentPageRect = new RectF();
+    /* Written by the UI thread in reevaluateTiles, read by the LOKit thread while rendering. */
+    protected volatile RectF currentViewport = new RectF();
+    /* The part of currentViewport which is on the screen, without the prefetch margins. */
+    protected volatile RectF currentVisibleViewport = new RectF();
+    protected volatile float currentZoom = 1.0f;
+    protected volatile RectF currentPageRect = new RectF();
 
+    private static final long DEFAULT_REEVALUATION_INTERVAL_MILLIS = 25;
+
+    /*
+     * Tiles are rendered at discrete zoom levels, level n has the zoom sqrt(2)^n. The coarsest
+     * level (1/16) is the zoom of the FixedZoomTileLayer.
+     */
+    protected static final int COARSEST_ZOOM_LEVEL = -8;
+    /* Zooms this close below a level are rendered at that level, so it is not missed by rounding. */
+    private static final float ZOOM_LEVEL_TOLERANCE = 0.01f;
+
+    /* Tile reevaluation throttle, guarded by the layer. */
     private long reevaluationNanoTime = 0;
+    private long reevaluationIntervalNanos = DEFAULT_REEVALUATION_INTERVAL_MILLIS * 1000000;
+    private boolean reevaluationScheduled = false;
+    private ImmutableViewportMetrics pendingViewportMetrics;
+    private DisplayPortMetrics pendingDisplayPort;
     private final EventCallback mCallback;
 
+    /* Vertices of the tiles drawn in a frame, only used on the GL thread. */
+    private final TileVertexBatch vertexBatch = new TileVertexBatch();
+    private FloatBuffer vertexBuffer;
+    private int vertexBufferId = 0;
+
     public ComposedTileLayer(Context context, EventCallback callback) {
         mCallback = callback;
         context.registerComponentCallbacks(this);
-        this.tileSize = new IntSize(256, 256);
+        this.tileSize = new IntSize(DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+        this.tiles = new TileGrid(tileSize);
+    }
+
+    /**
+     * Returns the zoom of the pyramid level.
+     */
+    protected static float getZoomOfLevel(int level) {
+        return (float) Math.pow(2.0, level / 2.0);
+    }
+
+    /**
+     * Returns the zoom of the level the tiles for the zoom are rendered at. This is the nearest
+     * level at or above the zoom, so the tiles are scaled down by at most sqrt(2) and never scaled
+     * up, except below the coarsest level.
+     */
+    protected static float quantizeZoom(float zoom) {
+        double level = Math.ceil(2.0 * Math.log(zoom) / Math.log(2.0) - ZOOM_LEVEL_TOLERANCE);
+        return getZoomOfLevel(Math.max(COARSEST_ZOOM_LEVEL, (int) level));
     }
 
     protected static RectF roundToTileSize(RectF input, IntSize tileSize) {
@@ -86,6 +144,9 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
         for (SubTile tile : tiles) {
             tile.beginTransaction();
         }
+        for (SubTile tile : staleTiles) {
+            tile.beginTransaction();
+        }
         tilesReadLock.unlock();
     }
 
@@ -95,19 +156,71 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
         for (SubTile tile : tiles) {
             tile.endTransaction();
         }
+        for (SubTile tile : staleTiles) {
+            tile.endTransaction();
+        }
         tilesReadLock.unlock();
         super.endTransaction();
     }
 
+    /**
+     * Draws the stale tiles and the tiles of other zoom levels, scaled, below the tiles of the
+     * current level, so they show until their area is rendered at the current level.
+     *
+     * The vertices of all visible tiles are built into one vertex buffer, which is drawn with one
+     * draw call per texture.
+     */
     @Override
     public void draw(RenderContext context) {
+        float zoom = currentZoom;
+        vertexBatch.reset(context.viewport);
         tilesReadLock.lock();
+        for (SubTile tile : staleTiles) {
+            tile.addToBatch(vertexBatch, 0, context);
+        }
         for (SubTile tile : tiles) {
-            if (RectF.intersects(tile.getBounds(context), context.viewport)) {
-                tile.draw(context);
-            }
+            tile.addToBatch(vertexBatch, FloatUtils.fuzzyEquals(tile.id.zoom, zoom) ? 2 : 1, context);
         }
         tilesReadLock.unlock();
+
+        if (vertexBatch.getQuadCount() == 0) {
+            return;
+        }
+        vertexBatch.build();
+        uploadVertices();
+
+        int stride = TileVertexBatch.FLOATS_PER_VERTEX * 4;
+        // Vertex coordinates are x,y,z starting at position 0, texture coordinates follow
+        GLES20.glVertexAttribPointer(context.positionHandle, 3, GLES20.GL_FLOAT, false, stride, 0);
+        GLES20.glVertexAttribPointer(context.textureHandle, 2, GLES20.GL_FLOAT, false, stride, 3 * 4);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        for (int i = 0; i < vertexBatch.getDrawCount(); i++) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, vertexBatch.getDrawTexture(i));
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, vertexBatch.getDrawFirstVertex(i), vertexBatch.getDrawVertexCount(i));
+        }
+
+        // the other layers use client side buffers
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /* Upload the vertices of the batch into the vertex buffer and leave it bound. */
+    private void uploadVertices() {
+        if (vertexBufferId == 0 || !GLES20.glIsBuffer(vertexBufferId)) {
+            int[] bufferIds = new int[1];
+            GLES20.glGenBuffers(1, bufferIds, 0);
+            vertexBufferId = bufferIds[0];
+        }
+        int floatCount = vertexBatch.getVertexCount() * TileVertexBatch.FLOATS_PER_VERTEX;
+        if (vertexBuffer == null || vertexBuffer.capacity() < floatCount) {
+            vertexBuffer = ByteBuffer.allocateDirect(vertexBatch.getVertices().length * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        vertexBuffer.clear();
+        vertexBuffer.put(vertexBatch.getVertices(), 0, floatCount);
+        vertexBuffer.position(0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, floatCount * 4, vertexBuffer, GLES20.GL_STREAM_DRAW);
     }
 
     @Override
@@ -121,7 +234,43 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
             tile.endTransaction();
             tile.performUpdates(context);
         }
+        boolean hasStaleTiles = !staleTiles.isEmpty();
         tilesReadLock.unlock();
+
+        if (hasStaleTiles) {
+            releaseStaleTilesIfReplaced();
+        }
+    }
+
+    /*
+     * Release the stale tiles once every tile of the visible viewport has an uploaded texture at
+     * the current zoom. Called on the GL thread after the uploads.
+     */
+    private void releaseStaleTilesIfReplaced() {
+        float zoom = currentZoom;
+        RectF rect = new RectF(currentVisibleViewport);
+        RectF pageRect = currentPageRect;
+        tilesWriteLock.lock();
+        try {
+            if (rect.intersect(0, 0, pageRect.width(), pageRect.height())) {
+                float top = (float) Math.floor(rect.top / tileSize.height) * tileSize.height;
+                float left = (float) Math.floor(rect.left / tileSize.width) * tileSize.width;
+                for (float y = top; y < rect.bottom; y += tileSize.height) {
+                    for (float x = left; x < rect.right; x += tileSize.width) {
+                        SubTile tile = tiles.get((int) x, (int) y, zoom);
+                        if (tile == null || !tile.hasTexture()) {
+                            return;
+                        }
+                    }
+                }
+            }
+            for (SubTile tile : staleTiles) {
+                tile.destroy();
+            }
+            staleTiles.clear();
+        } finally {
+            tilesWriteLock.unlock();
+        }
     }
 
     @Override
@@ -142,66 +291,114 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
         for (SubTile tile : tiles) {
             tile.setResolution(newResolution);
         }
+        for (SubTile tile : staleTiles) {
+            tile.setResolution(newResolution);
+        }
         tilesReadLock.unlock();
     }
 
-    public void reevaluateTiles(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics mDisplayPort) {
-        RectF newViewPort = getViewPort(viewportMetrics);
-        float newZoom = getZoom(viewportMetrics);
+    /**
+     * Set the minimum interval between two tile reevaluations.
+     */
+    public synchronized void setReevaluationInterval(long millis) {
+        reevaluationIntervalNanos = millis * 1000000;
+    }
 
-        // When
-        if (newZoom <= 0.0 || Float.isNaN(newZoom)) {
+    /**
+     * Request tiles for the viewport. Requests are throttled to one per reevaluation interval: a
+     * request within the interval is postponed to the first frame after the interval ends, where
+     * the latest requested viewport is evaluated, so the layer always settles on the final viewport.
+     */
+    public synchronized void reevaluateTiles(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort) {
+        pendingViewportMetrics = viewportMetrics;
+        pendingDisplayPort = displayPort;
+        if (reevaluationScheduled) {
             return;
         }
 
-        if (currentViewport.equals(newViewPort) && FloatUtils.fuzzyEquals(currentZoom, newZoom)) {
+        long delayNanos = reevaluationNanoTime + reevaluationIntervalNanos - System.nanoTime();
+        if (delayNanos <= 0) {
+            reevaluatePendingTiles();
             return;
         }
 
-        long currentReevaluationNanoTime = System.nanoTime();
-        if ((currentReevaluationNanoTime - reevaluationNanoTime) < 25 * 1000000) {
+        reevaluationScheduled = true;
+        final long delayMillis = (delayNanos + 999999) / 1000000;
+        TheApplication.getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallbackDelayed(ComposedTileLayer.this, delayMillis);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void doFrame(long frameTimeNanos) {
+        reevaluationScheduled = false;
+        reevaluatePendingTiles();
+    }
+
+    private void reevaluatePendingTiles() {
+        ImmutableViewportMetrics viewportMetrics = pendingViewportMetrics;
+        float newZoom = getZoom(viewportMetrics, pendingDisplayPort);
+
+        // When
+        if (newZoom <= 0.0 || Float.isNaN(newZoom)) {
+            return;
+        }
+
+        RectF newViewPort = getViewPort(viewportMetrics, pendingDisplayPort, newZoom);
+
+        if (currentViewport.equals(newViewPort) && FloatUtils.fuzzyEquals(currentZoom, newZoom)) {
             return;
         }
 
-        reevaluationNanoTime = currentReevaluationNanoTime;
+        reevaluationNanoTime = System.nanoTime();
 
         currentViewport = newViewPort;
+        currentVisibleViewport = getVisibleViewPort(viewportMetrics, newZoom);
         currentZoom = newZoom;
-        currentPageRect = viewportMetrics.getPageRect();
+        currentPageRect = RectUtils.scale(viewportMetrics.getCssPageRect(), newZoom);
         if(mCallback != null)mCallback.queueEvent(new LOEvent(LOEvent.TILE_REEVALUATION_REQUEST, this));
     }
 
-    protected abstract RectF getViewPort(ImmutableViewportMetrics viewportMetrics);
+    /**
+     * Returns the area (in pixels scaled by the zoom of the tiles) the layer should have tiles for.
+     */
+    protected abstract RectF getViewPort(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort, float zoom);
+
+    protected abstract RectF getVisibleViewPort(ImmutableViewportMetrics viewportMetrics, float zoom);
 
-    protected abstract float getZoom(ImmutableViewportMetrics viewportMetrics);
+    /**
+     * Returns the zoom the tiles are rendered at, one of the levels returned by quantizeZoom.
+     */
+    protected abstract float getZoom(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort);
 
     protected abstract int getTilePriority();
 
     private boolean containsTilesMatching(float x, float y, float currentZoom) {
         tilesReadLock.lock();
         try {
-            for (SubTile tile : tiles) {
-                if (tile.id.x == x && tile.id.y == y && tile.id.zoom == currentZoom) {
-                    return true;
-                }
-            }
-            return false;
+            return tiles.contains((int) x, (int) y, currentZoom);
         } finally {
             tilesReadLock.unlock();
         }
     }
 
     public void addNewTiles(List<SubTile> newTiles) {
-        for (float y = currentViewport.top; y < currentViewport.bottom; y += tileSize.height) {
-            if (y > currentPageRect.height()) {
+        RectF viewport = currentViewport;
+        RectF pageRect = currentPageRect;
+        float zoom = currentZoom;
+        for (float y = viewport.top; y < viewport.bottom; y += tileSize.height) {
+            if (y > pageRect.height()) {
                 continue;
             }
-            for (float x = currentViewport.left; x < currentViewport.right; x += tileSize.width) {
-                if (x > currentPageRect.width()) {
+            for (float x = viewport.left; x < viewport.right; x += tileSize.width) {
+                if (x > pageRect.width()) {
                     continue;
                 }
-                if (!containsTilesMatching(x, y, currentZoom)) {
-                    TileIdentifier tileId = new TileIdentifier((int) x, (int) y, currentZoom, tileSize);
+                if (!containsTilesMatching(x, y, zoom)) {
+                    TileIdentifier tileId = new TileIdentifier((int) x, (int) y, zoom, tileSize);
                     SubTile tile = createNewTile(tileId);
                     newTiles.add(tile);
                 }
@@ -211,50 +408,134 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
 
     public void clearMarkedTiles() {
         tilesWriteLock.lock();
-        Iterator<SubTile> iterator = tiles.iterator();
-        while (iterator.hasNext()) {
-            SubTile tile = iterator.next();
-            if (tile.markedForRemoval) {
+        for (SubTile tile : tilesMarkedForRemoval) {
+            if (tiles.remove(tile)) {
+                tile.destroy();
+            }
+        }
+        tilesMarkedForRemoval.clear();
+        tilesWriteLock.unlock();
+    }
+
+    /**
+     * Remove tiles which were added by addNewTiles but whose rendering was cancelled, so they are
+     * added again by the next reevaluation.
+     */
+    public void removeTiles(List<SubTile> tilesToRemove) {
+        tilesWriteLock.lock();
+        for (SubTile tile : tilesToRemove) {
+            if (tiles.remove(tile)) {
                 tile.destroy();
-                iterator.remove();
             }
         }
         tilesWriteLock.unlock();
     }
 
+    /**
+     * Mark the tiles which are outside of the current viewport or of a different zoom for removal.
+     * Uploaded tiles of a different zoom which intersect the visible viewport become stale tiles
+     * instead, which are drawn until their replacements are uploaded. Only valid inside a
+     * transaction.
+     */
     public void markTiles() {
-        tilesReadLock.lock();
-        for (SubTile tile : tiles) {
-            if (FloatUtils.fuzzyEquals(tile.id.zoom, currentZoom)) {
-                RectF tileRect = tile.id.getRectF();
-                if (!RectF.intersects(currentViewport, tileRect)) {
-                    tile.markForRemoval();
-                }
+        float zoom = currentZoom;
+        RectF visibleViewport = currentVisibleViewport;
+        List<SubTile> outsideTiles = new ArrayList<SubTile>();
+        tilesWriteLock.lock();
+        tiles.collectOutside(currentViewport, zoom, outsideTiles);
+        for (SubTile tile : outsideTiles) {
+            if (tile.markedForRemoval) {
+                continue;
+            }
+            if (!FloatUtils.fuzzyEquals(tile.id.zoom, zoom) && tile.hasTexture()
+                    && RectF.intersects(RectUtils.scale(tile.id.getCSSRectF(), zoom), visibleViewport)) {
+                tiles.remove(tile);
+                staleTiles.add(tile);
             } else {
                 tile.markForRemoval();
+                tilesMarkedForRemoval.add(tile);
             }
         }
-        tilesReadLock.unlock();
+        tilesWriteLock.unlock();
     }
 
+    /**
+     * Remove all tiles, so they are rendered again. The uploaded tiles are kept as stale tiles
+     * until the visible viewport is rendered again, the others are released.
+     */
     public void clearAndReset() {
         tilesWriteLock.lock();
-        tiles.clear();
+        retireAllTiles();
+        tilesWriteLock.unlock();
+        currentViewport = new RectF();
+    }
+
+    /**
+     * Change the size of the tiles. The current tiles become stale tiles, and the next
+     * reevaluation requests the tiles at the new size.
+     */
+    public void setTileSize(IntSize newTileSize) {
+        if (newTileSize.equals(tileSize)) {
+            return;
+        }
+        tilesWriteLock.lock();
+        retireAllTiles();
+        tileSize = newTileSize;
+        tiles = new TileGrid(newTileSize);
         tilesWriteLock.unlock();
         currentViewport = new RectF();
     }
 
+    /* Move the uploaded tiles to the stale tiles and release the others. Needs the write lock. */
+    private void retireAllTiles() {
+        for (SubTile tile : tiles) {
+            if (tile.hasTexture()) {
+                staleTiles.add(tile);
+            } else {
+                tile.destroy();
+            }
+        }
+        tiles.clear();
+        tilesMarkedForRemoval.clear();
+    }
+
     private SubTile createNewTile(TileIdentifier tileId) {
         SubTile tile = new SubTile(tileId);
         tile.beginTransaction();
         tilesWriteLock.lock();
-        tiles.add(tile);
+        tiles.put(tile);
         tilesWriteLock.unlock();
         return tile;
     }
 
     public boolean isStillValid(TileIdentifier tileId) {
-        return RectF.intersects(currentViewport, tileId.getRectF()) || currentViewport.contains(tileId.getRectF());
+        RectF viewport = currentViewport;
+        if (!FloatUtils.fuzzyEquals(tileId.zoom, currentZoom)) {
+            return false;
+        }
+        return RectF.intersects(viewport, tileId.getRectF()) || viewport.contains(tileId.getRectF());
+    }
+
+    /**
+     * Sort the tiles by the distance of their centre to the centre of the current viewport, so the
+     * tiles the user is looking at are rendered first.
+     */
+    public void sortByRenderOrder(List<SubTile> tilesToRender) {
+        RectF viewport = currentViewport;
+        final float centerX = viewport.centerX();
+        final float centerY = viewport.centerY();
+        Collections.sort(tilesToRender, new Comparator<SubTile>() {
+            @Override
+            public int compare(SubTile a, SubTile b) {
+                return Float.compare(distanceSquared(a.id, centerX, centerY), distanceSquared(b.id, centerX, centerY));
+            }
+        });
+    }
+
+    private static float distanceSquared(TileIdentifier tileId, float x, float y) {
+        float dx = tileId.x + tileId.size.width / 2.0f - x;
+        float dy = tileId.y + tileId.size.height / 2.0f - y;
+        return dx * dx + dy * dy;
     }
 
     /**
@@ -262,30 +543,183 @@ public abstract class ComposedTileLayer extends Layer implements ComponentCallba
      */
     public void invalidateTiles(List<SubTile> tilesToInvalidate, RectF cssRect) {
         RectF zoomedRect = RectUtils.scale(cssRect, currentZoom);
+        List<SubTile> intersecting = new ArrayList<SubTile>();
         tilesReadLock.lock();
-        for (SubTile tile : tiles) {
-            if (!tile.markedForRemoval && RectF.intersects(zoomedRect, tile.id.getRectF())) {
+        tiles.collectIntersecting(zoomedRect, currentZoom, intersecting);
+        tilesReadLock.unlock();
+        for (SubTile tile : intersecting) {
+            if (!tile.markedForRemoval) {
                 tilesToInvalidate.add(tile);
             }
         }
-        tilesReadLock.unlock();
     }
 
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
     }
 
+    /**
+     * Remove tiles to release memory. Only valid inside a transaction.
+     * @param keepVisible - keep the tiles which intersect the visible viewport, otherwise remove all tiles
+     * @return estimated number of bytes released
+     */
+    protected long evictTiles(boolean keepVisible) {
+        List<SubTile> evictedTiles = new ArrayList<SubTile>();
+        long released = 0;
+        tilesWriteLock.lock();
+        if (keepVisible) {
+            tiles.collectOutside(currentVisibleViewport, currentZoom, evictedTiles);
+        } else {
+            for (SubTile tile : tiles) {
+                evictedTiles.add(tile);
+            }
+            evictedTiles.addAll(staleTiles);
+            staleTiles.clear();
+        }
+        for (SubTile tile : evictedTiles) {
+            released += tile.getMemoryUsage();
+            tiles.remove(tile);
+            tile.destroy();
+        }
+        tilesWriteLock.unlock();
+        return released;
+    }
+
+    /**
+     * Returns the number of tiles of the layer, including the stale tiles.
+     */
+    public int getTileCount() {
+        tilesReadLock.lock();
+        int count = tiles.size() + staleTiles.size();
+        tilesReadLock.unlock();
+        return count;
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the tiles of the layer.
+     */
+    public long getMemoryUsage() {
+        long usage = 0;
+        tilesReadLock.lock();
+        for (SubTile tile : tiles) {
+            usage += tile.getMemoryUsage();
+        }
+        for (SubTile tile : staleTiles) {
+            usage += tile.getMemoryUsage();
+        }
+        tilesReadLock.unlock();
+        return usage;
+    }
+
+    /**
+     * Add the tiles which use memory and are outside of the display port to the candidates for
+     * eviction by the TileMemoryBudget. The prefetched tiles of the display port are kept, they
+     * would only be requested again by the next reevaluation.
+     */
+    void collectEvictionCandidates(List<TileMemoryBudget.Candidate> candidates, long now) {
+        RectF viewport = currentViewport;
+        RectF visibleViewport = currentVisibleViewport;
+        float zoom = currentZoom;
+        List<SubTile> outsideTiles = new ArrayList<SubTile>();
+        tilesReadLock.lock();
+        tiles.collectOutside(viewport, zoom, outsideTiles);
+        List<SubTile> stale = new ArrayList<SubTile>(staleTiles);
+        tilesReadLock.unlock();
+
+        // the stale tiles are only placeholders, so they go first
+        for (SubTile tile : stale) {
+            candidates.add(new TileMemoryBudget.Candidate(this, tile, Long.MAX_VALUE));
+        }
+
+        for (SubTile tile : outsideTiles) {
+            if (tile.getMemoryUsage() == 0) {
+                continue;
+            }
+            long score;
+            if (!FloatUtils.fuzzyEquals(tile.id.zoom, zoom)) {
+                score = Long.MAX_VALUE;
+            } else {
+                RectF tileRect = tile.id.getRectF();
+                float dx = Math.max(0, Math.max(visibleViewport.left - tileRect.right, tileRect.left - visibleViewport.right));
+                float dy = Math.max(0, Math.max(visibleViewport.top - tileRect.bottom, tileRect.top - visibleViewport.bottom));
+                float distanceInTiles = (float) Math.hypot(dx / tileSize.width, dy / tileSize.height);
+                score = TileMemoryBudget.getEvictionScore(now - tile.getLastUsedTime(), distanceInTiles);
+            }
+            candidates.add(new TileMemoryBudget.Candidate(this, tile, score));
+        }
+    }
+
+    /**
+     * Remove the tile from the layer. Only valid inside a transaction.
+     * @return estimated number of bytes released
+     */
+    long evictTile(SubTile tile) {
+        long released = 0;
+        tilesWriteLock.lock();
+        if (tiles.remove(tile) || staleTiles.remove(tile)) {
+            released = tile.getMemoryUsage();
+            tile.destroy();
+        }
+        tilesWriteLock.unlock();
+        return released;
+    }
+
+    /**
+     * Release tile memory, the tiles outside of the visible viewport are removed at every level
+     * so the visible ones, low resolution tiles included, don't have to be rendered again.
+     * @return estimated number of bytes released
+     */
+    protected long trimTiles(boolean critical) {
+        return evictTiles(true);
+    }
+
     @Override
     public void onLowMemory() {
         Log.i(LOGTAG, "onLowMemory");
+        onTrimMemory(TRIM_MEMORY_RUNNING_CRITICAL);
     }
 
+    /**
+     * Runs on the main thread, so only the pools are trimmed here; releasing the tiles needs a
+     * transaction, which may wait for a tile reevaluation, and is queued to the LOKit thread.
+     */
     @Override
     public void onTrimMemory(int level) {
-        if (level >= 15 /*TRIM_MEMORY_RUNNING_CRITICAL*/) {
-            Log.i(LOGTAG, "Trimming memory - TRIM_MEMORY_RUNNING_CRITICAL");
-        } else if (level >= 10 /*TRIM_MEMORY_RUNNING_LOW*/) {
-            Log.i(LOGTAG, "Trimming memory - TRIM_MEMORY_RUNNING_LOW");
+        if (level < TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        if(mCallback != null)mCallback.queueEvent(new LOEvent(LOEvent.TRIM_MEMORY, this, level));
+        if (isCritical(level)) {
+            long released = DirectBufferAllocator.trimPool(0);
+            released += TextureGenerator.get().releaseRecycled();
+            released += TileTextureAtlas.get().trim();
+            Log.i(LOGTAG, "Trimming memory - critical (level " + level + "), released "
+                    + released + " bytes of pooled buffers and textures");
+        }
+    }
+
+    /**
+     * Whether the pools are emptied for the trim memory level. TRIM_MEMORY_UI_HIDDEN is sent on
+     * every switch to another app, so it is handled like TRIM_MEMORY_RUNNING_LOW.
+     */
+    private static boolean isCritical(int level) {
+        return level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_BACKGROUND;
+    }
+
+    /**
+     * Release the tiles for the trim memory level, queued by onTrimMemory. Called on the LOKit
+     * thread.
+     */
+    public void trimMemory(int level) {
+        boolean critical = isCritical(level);
+        long released;
+        beginTransaction();
+        try {
+            released = trimTiles(critical);
+        } finally {
+            endTransaction();
         }
+        Log.i(LOGTAG, "Trimming memory - " + (critical ? "critical" : "low")
+                + " (level " + level + "), released " + released + " bytes of tiles");
     }
 }
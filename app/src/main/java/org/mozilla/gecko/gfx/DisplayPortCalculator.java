@@ -13,10 +13,9 @@ final class DisplayPortCalculator {
     private static final String LOGTAG = DisplayPortCalculator.class.getSimpleName();
     private static final PointF ZERO_VELOCITY = new PointF(0, 0);
 
-    // Keep this in sync with the TILEDLAYERBUFFER_TILE_SIZE defined in gfx/layers/TiledLayerBuffer.h
-    private static final int TILE_SIZE = 256;
+    private static final int DEFAULT_TILE_SIZE = 256;
 
-    private static final String PREF_DISPLAYPORT_STRATEGY = "gfx.displayport.strategy";
+    static final String PREF_DISPLAYPORT_STRATEGY = "gfx.displayport.strategy";
     private static final String PREF_DISPLAYPORT_FM_MULTIPLIER = "gfx.displayport.strategy_fm.multiplier";
     private static final String PREF_DISPLAYPORT_FM_DANGER_X = "gfx.displayport.strategy_fm.danger_x";
     private static final String PREF_DISPLAYPORT_FM_DANGER_Y = "gfx.displayport.strategy_fm.danger_y";
@@ -31,10 +30,13 @@ final class DisplayPortCalculator {
 
     private DisplayPortStrategy sStrategy;
     private final Context mMainActivity;
+    // Keep this in sync with the tile size of the ComposedTileLayers, see GeckoLayerClient.setTileSize
+    private volatile int mTileSize = DEFAULT_TILE_SIZE;
 
     DisplayPortCalculator(Context context) {
         this.mMainActivity = context;
         sStrategy = new VelocityBiasStrategy(mMainActivity, null);
+        sStrategy.mTileSize = mTileSize;
     }
 
     DisplayPortMetrics calculate(ImmutableViewportMetrics metrics, PointF velocity) {
@@ -56,6 +58,14 @@ final class DisplayPortCalculator {
         sStrategy.resetPageState();
     }
 
+    /**
+     * Set the edge length of the tiles the display port is aligned to.
+     */
+    void setTileSize(int tileSize) {
+        mTileSize = tileSize;
+        sStrategy.mTileSize = tileSize;
+    }
+
     static void addPrefNames(JSONArray prefs) {
         prefs.put(PREF_DISPLAYPORT_STRATEGY);
         prefs.put(PREF_DISPLAYPORT_FM_MULTIPLIER);
@@ -102,6 +112,7 @@ final class DisplayPortCalculator {
                 Log.e(LOGTAG, "Invalid strategy index specified");
                 return false;
         }
+        sStrategy.mTileSize = mTileSize;
         Log.i(LOGTAG, "Set strategy " + sStrategy);
         return true;
     }
@@ -112,6 +123,9 @@ final class DisplayPortCalculator {
     }
 
     private static abstract class DisplayPortStrategy {
+        /* Edge length of the tiles the display port is aligned to. */
+        volatile int mTileSize = DEFAULT_TILE_SIZE;
+
         /** Calculates a displayport given a viewport and panning velocity. */
         public abstract DisplayPortMetrics calculate(ImmutableViewportMetrics metrics, PointF velocity);
         /** Returns true if a checkerboard is about to be visible and we should not throttle drawing. */
@@ -120,6 +134,25 @@ final class DisplayPortCalculator {
         public boolean drawTimeUpdate(long millis, int pixels) { return false; }
         /** Reset any page-specific state stored, as the page being displayed has changed. */
         public void resetPageState() {}
+
+        /**
+         * Expand the given margins such that when they are applied on the viewport, the resulting rect
+         * does not have any partial tiles, except when it is clipped by the page bounds. This assumes
+         * the tiles are mTileSize by mTileSize and start at the origin, such that there will always be
+         * a tile at (0,0)-(mTileSize,mTileSize)).
+         */
+        protected DisplayPortMetrics getTileAlignedDisplayPortMetrics(RectF margins, float zoom, ImmutableViewportMetrics metrics) {
+            float left = metrics.viewportRectLeft - margins.left;
+            float top = metrics.viewportRectTop - margins.top;
+            float right = metrics.viewportRectRight + margins.right;
+            float bottom = metrics.viewportRectBottom + margins.bottom;
+            int tileSize = mTileSize;
+            left = (float) Math.max(metrics.pageRectLeft, tileSize * Math.floor(left / tileSize));
+            top = (float) Math.max(metrics.pageRectTop, tileSize * Math.floor(top / tileSize));
+            right = (float) Math.min(metrics.pageRectRight, tileSize * Math.ceil(right / tileSize));
+            bottom = (float) Math.min(metrics.pageRectBottom, tileSize * Math.ceil(bottom / tileSize));
+            return new DisplayPortMetrics(left, top, right, bottom, zoom);
+        }
     }
 
     /**
@@ -157,24 +190,6 @@ final class DisplayPortCalculator {
         return clampToPageBounds(rect, metrics);
     }
 
-    /**
-     * Expand the given margins such that when they are applied on the viewport, the resulting rect
-     * does not have any partial tiles, except when it is clipped by the page bounds. This assumes
-     * the tiles are TILE_SIZE by TILE_SIZE and start at the origin, such that there will always be
-     * a tile at (0,0)-(TILE_SIZE,TILE_SIZE)).
-     */
-    private static DisplayPortMetrics getTileAlignedDisplayPortMetrics(RectF margins, float zoom, ImmutableViewportMetrics metrics) {
-        float left = metrics.viewportRectLeft - margins.left;
-        float top = metrics.viewportRectTop - margins.top;
-        float right = metrics.viewportRectRight + margins.right;
-        float bottom = metrics.viewportRectBottom + margins.bottom;
-        left = (float) Math.max(metrics.pageRectLeft, TILE_SIZE * Math.floor(left / TILE_SIZE));
-        top = (float) Math.max(metrics.pageRectTop, TILE_SIZE * Math.floor(top / TILE_SIZE));
-        right = (float) Math.min(metrics.pageRectRight, TILE_SIZE * Math.ceil(right / TILE_SIZE));
-        bottom = (float) Math.min(metrics.pageRectBottom, TILE_SIZE * Math.ceil(bottom / TILE_SIZE));
-        return new DisplayPortMetrics(left, top, right, bottom, zoom);
-    }
-
     /**
      * Adjust the given margins so if they are applied on the viewport in the metrics, the resulting rect
      * does not exceed the page bounds. This code will maintain the total margin amount for a given axis;
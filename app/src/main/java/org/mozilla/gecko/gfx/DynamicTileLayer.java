@@ -10,15 +10,45 @@ public class DynamicTileLayer extends ComposedTileLayer {
         super(context, callback);
     }
 
+    /**
+     * The tiles follow the display port, which the DisplayPortCalculator biases in the direction of
+     * the pan velocity, so tiles are prefetched where the user is going instead of equally in all
+     * directions. Without a display port the viewport is inflated by a fixed amount.
+     */
     @Override
-    protected RectF getViewPort(ImmutableViewportMetrics viewportMetrics) {
-        RectF rect = viewportMetrics.getViewport();
-        return inflate(roundToTileSize(rect, tileSize), getInflateFactor());
+    protected RectF getViewPort(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort, float zoom) {
+        RectF visibleViewPort = getVisibleViewPort(viewportMetrics, zoom);
+        if (!hasDisplayPort(displayPort)) {
+            return inflate(visibleViewPort, getInflateFactor());
+        }
+        // the display port may be calculated for the zoom an animation ends with
+        RectF rect = normalizeRect(displayPort.getPosition(), displayPort.getResolution(), zoom);
+        RectF viewPort = new RectF(
+                (float) Math.floor(rect.left / tileSize.width) * tileSize.width,
+                (float) Math.floor(rect.top / tileSize.height) * tileSize.height,
+                (float) Math.ceil(rect.right / tileSize.width) * tileSize.width,
+                (float) Math.ceil(rect.bottom / tileSize.height) * tileSize.height);
+        viewPort.union(visibleViewPort);
+        return viewPort;
     }
 
     @Override
-    protected float getZoom(ImmutableViewportMetrics viewportMetrics) {
-        return viewportMetrics.zoomFactor;
+    protected RectF getVisibleViewPort(ImmutableViewportMetrics viewportMetrics, float zoom) {
+        RectF rect = normalizeRect(viewportMetrics.getViewport(), viewportMetrics.zoomFactor, zoom);
+        return roundToTileSize(rect, tileSize);
+    }
+
+    /**
+     * The tiles are rendered at the pyramid level of the zoom the display port is calculated for,
+     * which is the zoom an animated zoom ends with, so the intermediate zooms of the animation
+     * aren't rendered. Between two levels the tiles of the level are scaled.
+     */
+    @Override
+    protected float getZoom(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort) {
+        if (hasDisplayPort(displayPort)) {
+            return quantizeZoom(displayPort.getResolution());
+        }
+        return quantizeZoom(viewportMetrics.zoomFactor);
     }
 
     @Override
@@ -26,6 +56,10 @@ public class DynamicTileLayer extends ComposedTileLayer {
         return 0;
     }
 
+    private static boolean hasDisplayPort(DisplayPortMetrics displayPort) {
+        return displayPort != null && !displayPort.getPosition().isEmpty() && displayPort.getResolution() > 0;
+    }
+
     private IntSize getInflateFactor() {
         return new IntSize(tileSize.width*2, tileSize.height*4);
     }
@@ -10,16 +10,27 @@ public class FixedZoomTileLayer extends ComposedTileLayer {
         super(context, callback);
     }
 
+    /**
+     * The low resolution tiles are cheap and cover a large area each, so they are kept around the
+     * viewport in all directions regardless of the display port.
+     */
     @Override
-    protected RectF getViewPort(ImmutableViewportMetrics viewportMetrics) {
-        float zoom = getZoom(viewportMetrics);
+    protected RectF getViewPort(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort, float zoom) {
+        return inflate(getVisibleViewPort(viewportMetrics, zoom), getInflateFactor());
+    }
+
+    @Override
+    protected RectF getVisibleViewPort(ImmutableViewportMetrics viewportMetrics, float zoom) {
         RectF rect = normalizeRect(viewportMetrics.getViewport(), viewportMetrics.zoomFactor, zoom);
-        return inflate(roundToTileSize(rect, tileSize), getInflateFactor());
+        return roundToTileSize(rect, tileSize);
     }
 
+    /**
+     * The low resolution tiles are the coarsest level of the zoom pyramid.
+     */
     @Override
-    protected float getZoom(ImmutableViewportMetrics viewportMetrics) {
-        return 1.0f / 16.0f;
+    protected float getZoom(ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort) {
+        return getZoomOfLevel(COARSEST_ZOOM_LEVEL);
     }
 
     @Override
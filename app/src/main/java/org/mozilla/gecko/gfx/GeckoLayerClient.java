@@ -11,6 +11,10 @@ import org.mozilla.gecko.ZoomConstraints;
 import java.util.List;
 
 public class GeckoLayerClient implements PanZoomTarget {
+    private static final MetricsRegistry.Gauge sTileCount = MetricsRegistry.get().gauge(MetricsRegistry.TILE_COUNT);
+    private static final MetricsRegistry.Gauge sTileBytes = MetricsRegistry.get().gauge(MetricsRegistry.TILE_BYTES);
+    private static final MetricsRegistry.Gauge sAtlasPages = MetricsRegistry.get().gauge(MetricsRegistry.ATLAS_PAGES);
+
     private LayerRenderer mLayerRenderer;
 
     private final Context mContext;
@@ -19,6 +23,7 @@ public class GeckoLayerClient implements PanZoomTarget {
 
     private ComposedTileLayer mLowResLayer;
     private ComposedTileLayer mRootLayer;
+    private TileMemoryBudget mTileMemoryBudget;
 
     private boolean mForceRedraw;
 
@@ -44,6 +49,8 @@ public class GeckoLayerClient implements PanZoomTarget {
     private LayerView mView;
     private final DisplayPortCalculator mDisplayPortCalculator;
     private final EventCallback mCallback;
+    /* Records the viewport changes while a recording is running, null otherwise. */
+    private volatile ViewportRecorder mViewportRecorder;
 
     public GeckoLayerClient(Context context, EventCallback callback) {
         // we can fill these in with dummy values because they are always written
@@ -70,6 +77,9 @@ public class GeckoLayerClient implements PanZoomTarget {
 
         mRootLayer = new DynamicTileLayer(mContext, mCallback);
         mLowResLayer = new FixedZoomTileLayer(mContext, mCallback);
+        mTileMemoryBudget = new TileMemoryBudget(mContext);
+        mTileMemoryBudget.addLayer(mLowResLayer);
+        mTileMemoryBudget.addLayer(mRootLayer);
 
         mLayerRenderer = new LayerRenderer(mView);
 
@@ -235,6 +245,10 @@ public class GeckoLayerClient implements PanZoomTarget {
     /** Implementation of PanZoomTarget */
     @Override
     public void setAnimationTarget(ImmutableViewportMetrics viewport) {
+        ViewportRecorder recorder = mViewportRecorder;
+        if (recorder != null) {
+            recorder.recordAnimationTarget(viewport);
+        }
         if (mIsReady) {
             // We know what the final viewport of the animation is going to be, so
             // immediately request a draw of that area by setting the display port
@@ -251,6 +265,10 @@ public class GeckoLayerClient implements PanZoomTarget {
     @Override
     public void setViewportMetrics(ImmutableViewportMetrics viewport) {
         mViewportMetrics = viewport;
+        ViewportRecorder recorder = mViewportRecorder;
+        if (recorder != null) {
+            recorder.recordViewport(viewport, mPanZoomController.getVelocityVector(), mPanZoomController.getRedrawHint());
+        }
         mView.requestRender();
         if (mIsReady) {
             geometryChanged();
@@ -261,6 +279,10 @@ public class GeckoLayerClient implements PanZoomTarget {
     @Override
     public void forceRedraw() {
         mForceRedraw = true;
+        ViewportRecorder recorder = mViewportRecorder;
+        if (recorder != null) {
+            recorder.recordForceRedraw();
+        }
         if (mIsReady) {
             geometryChanged();
         }
@@ -319,11 +341,62 @@ public class GeckoLayerClient implements PanZoomTarget {
         mRootLayer.reevaluateTiles(mViewportMetrics, mDisplayPort);
     }
 
+    /**
+     * Set the edge length of the tiles of both layers, which the display port is aligned to too.
+     */
+    public void setTileSize(int size) {
+        IntSize tileSize = new IntSize(size, size);
+        mDisplayPortCalculator.setTileSize(size);
+        mLowResLayer.setTileSize(tileSize);
+        mRootLayer.setTileSize(tileSize);
+    }
+
     public void clearAndResetlayers() {
         mLowResLayer.clearAndReset();
         mRootLayer.clearAndReset();
     }
 
+    /**
+     * Evict tiles if the layers use more memory than the tile budget, and update the tile
+     * metrics. Only valid between beginDrawing and endDrawing.
+     */
+    public void enforceTileMemoryBudget() {
+        mTileMemoryBudget.enforce();
+        sTileCount.set(mTileMemoryBudget.getTileCount());
+        sTileBytes.set(mTileMemoryBudget.getBytesInUse());
+        sAtlasPages.set(TileTextureAtlas.get().getPageCount());
+    }
+
+    /**
+     * Start recording the viewport changes for the TileReplayHarness, replacing a running recording.
+     * @return false if the layers are not ready yet
+     */
+    public boolean startViewportRecording() {
+        if (!mIsReady) {
+            return false;
+        }
+        mViewportRecorder = new ViewportRecorder(mRootLayer.tileSize.width);
+        return true;
+    }
+
+    /**
+     * Stop recording the viewport changes.
+     * @return the recorder with the recorded trace, or null if nothing was recorded
+     */
+    public ViewportRecorder stopViewportRecording() {
+        ViewportRecorder recorder = mViewportRecorder;
+        mViewportRecorder = null;
+        return recorder;
+    }
+
+    public boolean isRecordingViewport() {
+        return mViewportRecorder != null;
+    }
+
+    public TileMemoryBudget getTileMemoryBudget() {
+        return mTileMemoryBudget;
+    }
+
     public void invalidateTiles(List<SubTile> tilesToInvalidate, RectF rect) {
         mLowResLayer.invalidateTiles(tilesToInvalidate, rect);
         mRootLayer.invalidateTiles(tilesToInvalidate, rect);
@@ -36,7 +36,7 @@ public class ImmutableViewportMetrics {
         zoomFactor = 1.0f;
     }
 
-    private ImmutableViewportMetrics(float aPageRectLeft, float aPageRectTop,
+    ImmutableViewportMetrics(float aPageRectLeft, float aPageRectTop,
         float aPageRectRight, float aPageRectBottom, float aCssPageRectLeft,
         float aCssPageRectTop, float aCssPageRectRight, float aCssPageRectBottom,
         float aViewportRectLeft, float aViewportRectTop, float aViewportRectRight,
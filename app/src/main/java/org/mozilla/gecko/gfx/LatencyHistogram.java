@@ -0,0 +1,134 @@
+package org.mozilla.gecko.gfx;
+
+/**
+ * Histogram of latencies in microseconds with HDR-style buckets: values below 32 are counted
+ * exactly, above that every power of two is split into 32 buckets, so percentiles are accurate
+ * to about 3% at any magnitude in a fixed array. Values above about 71 minutes are counted as the
+ * maximum value.
+ *
+ * Recording is cheap enough for every tile and frame; all methods are synchronized, as values
+ * are recorded on the LOKit and GL threads and read on the UI thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 32;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+
+    public synchronized void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        mCounts[getBucketIndex(value)]++;
+        mCount++;
+        mSum += value;
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the exact mean of the recorded values, 0 if there are none.
+     */
+    public synchronized float getMean() {
+        return mCount > 0 ? (float) mSum / mCount : 0;
+    }
+
+    /**
+     * Returns the highest value counted in the same bucket as the value at the percentile (0 to
+     * 100), 0 if there are no values.
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += mCounts[i];
+            if (cumulative >= target) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    public long getMax() {
+        return getValueAtPercentile(100);
+    }
+
+    /**
+     * Returns the number of buckets, each of which counts the values from getBucketLowerBound to
+     * getBucketUpperBound.
+     */
+    public static int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    public synchronized long getCountInBucket(int index) {
+        return mCounts[index];
+    }
+
+    public synchronized LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(mCounts, 0, copy.mCounts, 0, BUCKET_COUNT);
+        copy.mCount = mCount;
+        copy.mSum = mSum;
+        return copy;
+    }
+
+    /**
+     * Remove the values of an earlier copy of this histogram, so only the values recorded since
+     * the copy remain.
+     */
+    public void subtract(LatencyHistogram earlier) {
+        LatencyHistogram values = earlier.copy();
+        synchronized (this) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mCounts[i] -= values.mCounts[i];
+            }
+            mCount -= values.mCount;
+            mSum -= values.mSum;
+        }
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    public static long getBucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        return ((long) (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT) << shift;
+    }
+
+    public static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        return getBucketLowerBound(index) + (1L << shift) - 1;
+    }
+}
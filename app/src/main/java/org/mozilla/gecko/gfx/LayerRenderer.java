@@ -65,6 +65,9 @@ public class LayerRenderer implements GLSurfaceView.Renderer {
 
     private static final int COORD_BUFFER_SIZE = 20;
 
+    private static final LatencyHistogram sFrameDrawTime = MetricsRegistry.get().histogram(MetricsRegistry.FRAME_DRAW_TIME);
+    private static final MetricsRegistry.Counter sFrameCount = MetricsRegistry.get().counter(MetricsRegistry.FRAME_COUNT);
+
     // The shaders run on the GPU directly, the vertex shader is only applying the
     // matrix transform detailed above
 
@@ -209,6 +212,7 @@ public class LayerRenderer implements GLSurfaceView.Renderer {
      */
     @Override
     public void onDrawFrame(GL10 gl) {
+        long start = System.nanoTime();
         Frame frame = new Frame(mView.getLayerClient().getViewportMetrics());
         synchronized (mView.getLayerClient()) {
             frame.beginDrawing();
@@ -217,6 +221,8 @@ public class LayerRenderer implements GLSurfaceView.Renderer {
             frame.drawForeground();
             frame.endDrawing();
         }
+        sFrameDrawTime.recordNanos(System.nanoTime() - start);
+        sFrameCount.increment();
     }
 
     private RenderContext createScreenContext(ImmutableViewportMetrics metrics) {
@@ -335,6 +341,7 @@ public class LayerRenderer implements GLSurfaceView.Renderer {
         public void beginDrawing() {
             TextureReaper.get().reap();
             TextureGenerator.get().fill();
+            TileTextureAtlas.get().releaseEmptyPages();
 
             mUpdated = true;
 
@@ -6,6 +6,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.PixelFormat;
 import android.util.AttributeSet;
+import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
@@ -37,6 +38,8 @@ public class LayerView extends FrameLayout {
     private LayerRenderer mRenderer;
 
     private final SurfaceView mSurfaceView;
+    /* The developer mode metrics overlay, null if hidden. */
+    private PerformanceHudView mPerformanceHud;
 
     private Listener mListener;
     private OnInterceptTouchListener mTouchIntercepter;
@@ -175,6 +178,20 @@ public class LayerView extends FrameLayout {
         mRenderer.addLayer(layer);
     }
 
+    /**
+     * Show or hide the PerformanceHudView over the document. Must be called on the UI thread.
+     */
+    public void setPerformanceHudVisible(boolean visible) {
+        if (visible && mPerformanceHud == null) {
+            mPerformanceHud = new PerformanceHudView(getContext());
+            addView(mPerformanceHud, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END));
+        } else if (!visible && mPerformanceHud != null) {
+            removeView(mPerformanceHud);
+            mPerformanceHud = null;
+        }
+    }
+
     public void removeLayer(Layer layer) {
         mRenderer.removeLayer(layer);
     }
@@ -0,0 +1,156 @@
+package org.mozilla.gecko.gfx;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the rendering metrics of the app: counters, gauges and latency histograms by name.
+ * The metrics live as long as the process and are always recorded, they are cheap enough; the
+ * PerformanceHudView shows them in developer mode and the settings export them as JSON.
+ */
+public class MetricsRegistry {
+    /* Duration of a LOKit paintTile call of a tile, in microseconds. */
+    public static final String TILE_PAINT_TIME = "tile.paint_time_us";
+    /* Duration of LayerRenderer.onDrawFrame, in microseconds. */
+    public static final String FRAME_DRAW_TIME = "frame.draw_time_us";
+    public static final String FRAME_COUNT = "frame.count";
+    /* Time the LOKit thread events wait in the queue, in microseconds. */
+    public static final String EVENT_QUEUE_WAIT = "event.queue_wait_us";
+    public static final String TILE_COUNT = "tile.count";
+    public static final String TILE_BYTES = "tile.bytes";
+    public static final String TEXTURE_UPLOADS = "texture.uploads";
+    public static final String TEXTURE_UPLOAD_BYTES = "texture.upload_bytes";
+    /* Invalidated tiles which rendered unchanged, so they were not uploaded again. */
+    public static final String TEXTURE_UPLOADS_SKIPPED = "texture.uploads_skipped";
+    public static final String ATLAS_PAGES = "atlas.pages";
+
+    private static MetricsRegistry sInstance;
+
+    private final Map<String, Counter> mCounters = new TreeMap<String, Counter>();
+    private final Map<String, Gauge> mGauges = new TreeMap<String, Gauge>();
+    private final Map<String, LatencyHistogram> mHistograms = new TreeMap<String, LatencyHistogram>();
+
+    public static synchronized MetricsRegistry get() {
+        if (sInstance == null) {
+            sInstance = new MetricsRegistry();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the counter of the name, created on first use.
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the gauge of the name, created on first use.
+     */
+    public synchronized Gauge gauge(String name) {
+        Gauge gauge = mGauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge();
+            mGauges.put(name, gauge);
+        }
+        return gauge;
+    }
+
+    /**
+     * Returns the histogram of the name, created on first use.
+     */
+    public synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns all metrics: the counters and gauges as numbers, the histograms with their count,
+     * mean, percentiles and the non-empty buckets as [lower bound, upper bound, count].
+     */
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        JSONObject gauges = new JSONObject();
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().get());
+        }
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), toJson(entry.getValue().copy()));
+        }
+        JSONObject metrics = new JSONObject();
+        metrics.put("counters", counters);
+        metrics.put("gauges", gauges);
+        metrics.put("histograms", histograms);
+        return metrics;
+    }
+
+    private static JSONObject toJson(LatencyHistogram histogram) throws JSONException {
+        JSONArray buckets = new JSONArray();
+        for (int i = 0; i < LatencyHistogram.getBucketCount(); i++) {
+            long count = histogram.getCountInBucket(i);
+            if (count > 0) {
+                JSONArray bucket = new JSONArray();
+                bucket.put(LatencyHistogram.getBucketLowerBound(i));
+                bucket.put(LatencyHistogram.getBucketUpperBound(i));
+                bucket.put(count);
+                buckets.put(bucket);
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getCount());
+        json.put("mean", histogram.getMean());
+        json.put("p50", histogram.getValueAtPercentile(50));
+        json.put("p90", histogram.getValueAtPercentile(90));
+        json.put("p99", histogram.getValueAtPercentile(99));
+        json.put("p999", histogram.getValueAtPercentile(99.9));
+        json.put("max", histogram.getMax());
+        json.put("buckets", buckets);
+        return json;
+    }
+
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    public static class Gauge {
+        private volatile long mValue;
+
+        public void set(long value) {
+            mValue = value;
+        }
+
+        public long get() {
+            return mValue;
+        }
+    }
+}
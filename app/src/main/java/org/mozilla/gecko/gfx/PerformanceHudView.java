@@ -0,0 +1,134 @@
+package org.mozilla.gecko.gfx;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * Developer mode overlay of the LayerView showing the rendering metrics of the MetricsRegistry
+ * twice a second. The rates and percentiles are of the values recorded since the last update.
+ */
+public class PerformanceHudView extends TextView {
+    private static final long UPDATE_INTERVAL_MILLIS = 500;
+
+    private final MetricsRegistry.Counter mFrameCount;
+    private final MetricsRegistry.Counter mUploads;
+    private final MetricsRegistry.Counter mUploadBytes;
+    private final MetricsRegistry.Gauge mTileCount;
+    private final MetricsRegistry.Gauge mTileBytes;
+    private final LatencyHistogram mFrameDrawTime;
+    private final LatencyHistogram mPaintTime;
+    private final LatencyHistogram mQueueWait;
+
+    private long mLastUpdateTime;
+    private long mLastFrameCount;
+    private long mLastUploads;
+    private long mLastUploadBytes;
+    private LatencyHistogram mLastFrameDrawTime;
+    private LatencyHistogram mLastPaintTime;
+    private LatencyHistogram mLastQueueWait;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+            postDelayed(this, UPDATE_INTERVAL_MILLIS);
+        }
+    };
+
+    public PerformanceHudView(Context context) {
+        super(context);
+        MetricsRegistry registry = MetricsRegistry.get();
+        mFrameCount = registry.counter(MetricsRegistry.FRAME_COUNT);
+        mUploads = registry.counter(MetricsRegistry.TEXTURE_UPLOADS);
+        mUploadBytes = registry.counter(MetricsRegistry.TEXTURE_UPLOAD_BYTES);
+        mTileCount = registry.gauge(MetricsRegistry.TILE_COUNT);
+        mTileBytes = registry.gauge(MetricsRegistry.TILE_BYTES);
+        mFrameDrawTime = registry.histogram(MetricsRegistry.FRAME_DRAW_TIME);
+        mPaintTime = registry.histogram(MetricsRegistry.TILE_PAINT_TIME);
+        mQueueWait = registry.histogram(MetricsRegistry.EVENT_QUEUE_WAIT);
+
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x99000000);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, getResources().getDisplayMetrics());
+        setPadding(padding, padding, padding, padding);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mLastUpdateTime = SystemClock.uptimeMillis();
+        mLastFrameCount = mFrameCount.get();
+        mLastUploads = mUploads.get();
+        mLastUploadBytes = mUploadBytes.get();
+        mLastFrameDrawTime = mFrameDrawTime.copy();
+        mLastPaintTime = mPaintTime.copy();
+        mLastQueueWait = mQueueWait.copy();
+        post(mUpdateRunnable);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mUpdateRunnable);
+        super.onDetachedFromWindow();
+    }
+
+    private void update() {
+        long now = SystemClock.uptimeMillis();
+        float seconds = Math.max(now - mLastUpdateTime, 1) / 1000f;
+        mLastUpdateTime = now;
+
+        long frameCount = mFrameCount.get();
+        long uploads = mUploads.get();
+        long uploadBytes = mUploadBytes.get();
+        float framesPerSecond = (frameCount - mLastFrameCount) / seconds;
+        float uploadsPerSecond = (uploads - mLastUploads) / seconds;
+        float uploadMegabytesPerSecond = (uploadBytes - mLastUploadBytes) / seconds / (1024 * 1024);
+        mLastFrameCount = frameCount;
+        mLastUploads = uploads;
+        mLastUploadBytes = uploadBytes;
+
+        LatencyHistogram frameDrawTime = mFrameDrawTime.copy();
+        LatencyHistogram frameDrawInterval = since(frameDrawTime, mLastFrameDrawTime);
+        mLastFrameDrawTime = frameDrawTime;
+        LatencyHistogram paintTime = mPaintTime.copy();
+        LatencyHistogram paintInterval = since(paintTime, mLastPaintTime);
+        mLastPaintTime = paintTime;
+        LatencyHistogram queueWait = mQueueWait.copy();
+        LatencyHistogram queueWaitInterval = since(queueWait, mLastQueueWait);
+        mLastQueueWait = queueWait;
+
+        setText(String.format(Locale.US,
+                "%5.1f fps  draw p50 %s p99 %s\n"
+                        + "%5.1f tiles/s paint p50 %s p99 %s\n"
+                        + "queue wait p50 %s p99 %s\n"
+                        + "%d tiles %.1f MB, %.1f uploads/s %.2f MB/s",
+                framesPerSecond, formatMillis(frameDrawInterval.getValueAtPercentile(50)),
+                formatMillis(frameDrawInterval.getValueAtPercentile(99)),
+                paintInterval.getCount() / seconds, formatMillis(paintInterval.getValueAtPercentile(50)),
+                formatMillis(paintInterval.getValueAtPercentile(99)),
+                formatMillis(queueWaitInterval.getValueAtPercentile(50)),
+                formatMillis(queueWaitInterval.getValueAtPercentile(99)),
+                mTileCount.get(), mTileBytes.get() / (1024f * 1024f), uploadsPerSecond, uploadMegabytesPerSecond));
+    }
+
+    /**
+     * Returns the values of the current copy recorded since the last copy.
+     */
+    private static LatencyHistogram since(LatencyHistogram current, LatencyHistogram last) {
+        LatencyHistogram interval = current.copy();
+        interval.subtract(last);
+        return interval;
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.US, "%5.1fms", micros / 1000f);
+    }
+}
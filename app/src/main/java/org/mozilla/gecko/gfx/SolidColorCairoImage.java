@@ -0,0 +1,103 @@
+package org.mozilla.gecko.gfx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A Cairo image of a single colour, as the rendered tiles of blank page areas and empty cells
+ * are. It has no pixel buffer, only the colour; the texture of the tile is a single pixel of the
+ * colour which is stretched over the tile bounds.
+ */
+public class SolidColorCairoImage extends CairoImage {
+    private static final IntSize PIXEL_SIZE = new IntSize(1, 1);
+
+    private final int mColor;
+    private final int mFormat;
+
+    /**
+     * @param color - the pixel in the format, its bytes read in big endian order
+     */
+    public SolidColorCairoImage(int color, int format) {
+        mColor = color;
+        mFormat = format;
+    }
+
+    /**
+     * Returns the solid colour image of the image if all of its pixels have the same colour,
+     * otherwise null. The image itself is not changed.
+     */
+    public static SolidColorCairoImage fromUniformImage(CairoImage image) {
+        ByteBuffer buffer = image.getBuffer();
+        int pixelCount = image.getSize().getArea();
+        if (buffer == null || pixelCount <= 0) {
+            return null;
+        }
+        int format = image.getFormat();
+        ByteBuffer pixels = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        pixels.position(0);
+        switch (CairoUtils.bitsPerPixelForCairoFormat(format)) {
+            case 32: {
+                IntBuffer ints = pixels.asIntBuffer();
+                int color = ints.get(0);
+                for (int i = 1; i < pixelCount; i++) {
+                    if (ints.get(i) != color) {
+                        return null;
+                    }
+                }
+                return new SolidColorCairoImage(color, format);
+            }
+            case 16: {
+                ShortBuffer shorts = pixels.asShortBuffer();
+                short color = shorts.get(0);
+                for (int i = 1; i < pixelCount; i++) {
+                    if (shorts.get(i) != color) {
+                        return null;
+                    }
+                }
+                return new SolidColorCairoImage(color & 0xffff, format);
+            }
+            default:
+                return null;
+        }
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    /**
+     * Write the pixel of the colour at the position of the buffer.
+     */
+    public void writePixel(ByteBuffer buffer) {
+        ByteBuffer pixel = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (CairoUtils.bitsPerPixelForCairoFormat(mFormat) == 16) {
+            pixel.putShort((short) mColor);
+        } else {
+            pixel.putInt(mColor);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Returns the size of the texture of the image, a single pixel.
+     */
+    @Override
+    public IntSize getSize() {
+        return PIXEL_SIZE;
+    }
+
+    @Override
+    public int getFormat() {
+        return mFormat;
+    }
+}
@@ -2,46 +2,63 @@ package org.mozilla.gecko.gfx;
 
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Region;
-import android.graphics.RegionIterator;
 import android.opengl.GLES20;
+import android.os.SystemClock;
 import org.libreoffice.data.TileIdentifier;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SubTile extends Layer {
     private static final String LOGTAG = SubTile.class.getSimpleName();
+    /* Pixel of a SolidColorCairoImage for the upload, only used on the GL thread. */
+    private static final ByteBuffer sPixelBuffer = ByteBuffer.allocateDirect(4);
+    /* Edge column of a tile for the gutter of its atlas slot, only used on the GL thread. */
+    private static ByteBuffer sGutterBuffer;
+    private static final MetricsRegistry.Counter sUploads = MetricsRegistry.get().counter(MetricsRegistry.TEXTURE_UPLOADS);
+    private static final MetricsRegistry.Counter sUploadBytes = MetricsRegistry.get().counter(MetricsRegistry.TEXTURE_UPLOAD_BYTES);
     public final TileIdentifier id;
 
     private final RectF mBounds;
-    private final RectF mTextureBounds;
     private final RectF mViewport;
-    private final Rect mIntBounds;
-    private final Rect mSubRect;
-    private final RectF mSubRectF;
-    private final Region mMaskedBounds;
     private final Rect mCropRect;
     private final RectF mObjRectF;
     private final float[] mCoords;
 
     public boolean markedForRemoval = false;
+    /* Set when the tile was removed from its layer, images set afterwards are released. */
+    private volatile boolean mDestroyed = false;
+    /* Time the tile was created or last drawn, for the LRU eviction of TileMemoryBudget. */
+    private volatile long mLastUsedTime = SystemClock.uptimeMillis();
 
     private CairoImage mImage;
     private IntSize mSize;
     private int[] mTextureIDs;
-    private boolean mDirtyTile;
+    /* Slot of the tile in the TileTextureAtlas, null if the tile has a texture of its own. */
+    private TileTextureAtlas.Slot mAtlasSlot;
+    private RectF mTextureRect;
+    /* Whether the texture storage of mSize is allocated, so glTexSubImage2D can be used. */
+    private boolean mTextureAllocated;
+    private int mTextureFormat;
+    /* Whether the content is a SolidColorCairoImage, its texture is a single pixel. */
+    private boolean mSolidColor;
+    /* Region of the image (in image pixels) which has to be uploaded. */
+    private final Rect mDirtyRect;
+    /* Re-rendered parts of the tile waiting to be uploaded into the texture. */
+    private final List<CairoImage> mImageParts;
+    private final List<Rect> mImagePartRects;
+    /* Hash of the content set by setImage, and of the last part set by setImagePart, 0 if unknown. */
+    private long mContentHash;
+    private final Rect mLastPartRect;
+    private long mLastPartHash;
 
     public SubTile(TileIdentifier id) {
         super();
         this.id = id;
 
         mBounds = new RectF();
-        mTextureBounds = new RectF();
         mViewport = new RectF();
-        mIntBounds = new Rect();
-        mSubRect = new Rect();
-        mSubRectF = new RectF();
-        mMaskedBounds = new Region();
         mCropRect = new Rect();
         mObjRectF = new RectF();
         mCoords = new float[20];
@@ -49,12 +66,144 @@ public class SubTile extends Layer {
         mImage = null;
         mTextureIDs = null;
         mSize = new IntSize(0, 0);
-        mDirtyTile = false;
+        mTextureAllocated = false;
+        mTextureFormat = CairoImage.FORMAT_INVALID;
+        mDirtyRect = new Rect();
+        mImageParts = new ArrayList<CairoImage>();
+        mImagePartRects = new ArrayList<Rect>();
+        mLastPartRect = new Rect();
     }
 
+    /**
+     * Set a rendered image of the whole tile, all of it is uploaded. Only valid inside a
+     * transaction.
+     */
     public void setImage(CairoImage image) {
-        if (image.getSize().isPositive()) {
-            this.mImage = image;
+        if (mDestroyed) {
+            image.destroy();
+            return;
+        }
+        IntSize imageSize = image.getSize();
+        if (!imageSize.isPositive()) {
+            return;
+        }
+        if (mImage != null && mImage != image) {
+            // return the buffer of the image which was never uploaded to the pool
+            mImage.destroy();
+        }
+        this.mImage = image;
+        mSolidColor = image instanceof SolidColorCairoImage;
+        mContentHash = 0;
+        mLastPartHash = 0;
+        // the new image is more recent than the parts waiting for upload
+        destroyImageParts();
+        mDirtyRect.set(0, 0, imageSize.width, imageSize.height);
+    }
+
+    /**
+     * Set the image with its hash by CairoUtils.hashImage, so the same content rendered again can
+     * be recognized by hasSameContent, 0 if unknown. Only valid inside a transaction.
+     */
+    public void setImage(CairoImage image, long contentHash) {
+        setImage(image);
+        if (!mDestroyed) {
+            mContentHash = contentHash;
+        }
+    }
+
+    /**
+     * Returns the part of the tile (in pixels relative to the tile origin) which intersects the
+     * rect in CSS coordinates, or null if they don't intersect.
+     */
+    public Rect getPartRect(RectF cssRect) {
+        RectF scaledRect = RectUtils.scale(cssRect, id.zoom);
+        scaledRect.offset(-id.x, -id.y);
+        Rect partRect = new Rect();
+        scaledRect.roundOut(partRect);
+        if (!partRect.intersect(0, 0, id.size.width, id.size.height)) {
+            return null;
+        }
+        return partRect;
+    }
+
+    /**
+     * Whether the tile has content, either uploaded or waiting for upload. Only valid inside a
+     * transaction.
+     */
+    public boolean hasContent() {
+        return mImage != null || mTextureAllocated;
+    }
+
+    /**
+     * Whether the tile content is uploaded to its texture, so the tile can be drawn. Only valid
+     * inside a transaction or on the GL thread.
+     */
+    public boolean hasTexture() {
+        return mTextureAllocated;
+    }
+
+    /**
+     * Whether the tile has content which a part rendered by setImagePart can be applied to. Only
+     * valid inside a transaction.
+     */
+    public boolean canUpdatePart() {
+        return hasContent() && !mSolidColor;
+    }
+
+    /**
+     * Whether the image with the hash by CairoUtils.hashImage is the content of the tile already,
+     * or of the part rect if it is not null, so it doesn't need to be set and uploaded again. Only
+     * valid inside a transaction.
+     */
+    public boolean hasSameContent(Rect partRect, long hash) {
+        if (hash == 0 || !hasContent()) {
+            return false;
+        }
+        if (partRect == null) {
+            return hash == mContentHash;
+        }
+        return hash == mLastPartHash && partRect.equals(mLastPartRect);
+    }
+
+    public void setImagePart(CairoImage image, Rect partRect) {
+        setImagePart(image, partRect, 0);
+    }
+
+    /**
+     * Replace a part of the tile content with the image, which has the size of the part rect.
+     * The hash of the image by CairoUtils.hashImage is kept for hasSameContent, 0 if unknown.
+     * Only valid inside a transaction and if canUpdatePart() returns true.
+     */
+    public void setImagePart(CairoImage image, Rect partRect, long hash) {
+        if (mDestroyed) {
+            image.destroy();
+            return;
+        }
+        // the content changed, the last part is only recognized again if it is set again
+        mContentHash = 0;
+        mLastPartRect.set(partRect);
+        mLastPartHash = hash;
+        if (mImage != null && mImage.getBuffer() != null && mImage.getFormat() == image.getFormat()) {
+            // the whole image is not uploaded yet, so update it instead
+            copyPart(image, mImage, partRect);
+            image.destroy();
+            mDirtyRect.union(partRect);
+            return;
+        }
+        mImageParts.add(image);
+        mImagePartRects.add(new Rect(partRect));
+    }
+
+    private static void copyPart(CairoImage part, CairoImage target, Rect partRect) {
+        ByteBuffer source = part.getBuffer().duplicate();
+        ByteBuffer destination = target.getBuffer().duplicate();
+        int bytesPerPixel = new CairoGLInfo(target.getFormat()).bytesPerPixel;
+        int rowBytes = partRect.width() * bytesPerPixel;
+        int targetStride = target.getSize().width * bytesPerPixel;
+        for (int row = 0; row < partRect.height(); row++) {
+            source.limit(row * rowBytes + rowBytes).position(row * rowBytes);
+            destination.position((partRect.top + row) * targetStride + partRect.left * bytesPerPixel);
+            destination.put(source);
         }
     }
 
@@ -67,11 +216,11 @@ public class SubTile extends Layer {
     }
 
     protected int getTextureID() {
-        return mTextureIDs[0];
+        return mAtlasSlot != null ? mAtlasSlot.textureId : mTextureIDs[0];
     }
 
     protected boolean initialized() {
-        return mTextureIDs != null;
+        return mTextureIDs != null || mAtlasSlot != null;
     }
 
     @Override
@@ -84,15 +233,69 @@ public class SubTile extends Layer {
         }
     }
 
+    /**
+     * Give the texture back to the TextureGenerator for reuse. The texture is deleted on the GL
+     * thread if it is not reused, so this is safe to call from any thread.
+     */
     private void cleanTexture() {
+        if (mAtlasSlot != null) {
+            TileTextureAtlas.get().free(mAtlasSlot);
+            mAtlasSlot = null;
+            mTextureRect = null;
+            mTextureAllocated = false;
+        }
         if (mTextureIDs != null) {
-            TextureReaper.get().add(mTextureIDs);
+            if (mTextureAllocated) {
+                TextureGenerator.get().recycle(mTextureIDs[0], mSize, mTextureFormat);
+            } else {
+                TextureReaper.get().add(mTextureIDs);
+            }
             mTextureIDs = null;
-            TextureReaper.get().reap();
+            mTextureAllocated = false;
         }
     }
 
+    /**
+     * Returns the estimated number of bytes used by the texture and the images waiting for upload.
+     */
+    public long getMemoryUsage() {
+        long usage = 0;
+        if (mTextureAllocated) {
+            usage += (long) mSize.getArea() * new CairoGLInfo(mTextureFormat).bytesPerPixel;
+        }
+        CairoImage image = mImage;
+        if (image != null && image.getBuffer() != null) {
+            usage += image.getBuffer().capacity();
+        }
+        for (CairoImage part : mImageParts) {
+            if (part.getBuffer() != null) {
+                usage += part.getBuffer().capacity();
+            }
+        }
+        return usage;
+    }
+
+    public long getLastUsedTime() {
+        return mLastUsedTime;
+    }
+
+    /**
+     * Set the time the tile was last drawn, in milliseconds of the clock passed to
+     * TileMemoryBudget.enforce.
+     */
+    void setLastUsedTime(long time) {
+        mLastUsedTime = time;
+    }
+
+    /**
+     * Whether the tile was removed from its layer.
+     */
+    boolean isDestroyed() {
+        return mDestroyed;
+    }
+
     public void destroy() {
+        mDestroyed = true;
         try {
             destroyImage();
             cleanTexture();
@@ -105,6 +308,15 @@ public class SubTile extends Layer {
             mImage.destroy();
             mImage = null;
         }
+        destroyImageParts();
+    }
+
+    private void destroyImageParts() {
+        for (CairoImage part : mImageParts) {
+            part.destroy();
+        }
+        mImageParts.clear();
+        mImagePartRects.clear();
     }
 
     /**
@@ -118,41 +330,85 @@ public class SubTile extends Layer {
         if (mImage == null) {
             return;
         }
-        mDirtyTile = true;
+        IntSize imageSize = mImage.getSize();
+        mDirtyRect.set(0, 0, imageSize.width, imageSize.height);
     }
 
     /**
-     * Remove the texture if the image is of different size than the current uploaded texture.
+     * Remove the texture if the image is of different size or format than the current uploaded
+     * texture.
      */
     private void validateTexture() {
         IntSize textureSize = mImage.getSize().nextPowerOfTwo();
+        int format = mImage.getFormat();
 
-        if (!textureSize.equals(mSize)) {
-            mSize = textureSize;
+        if (!textureSize.equals(mSize) || format != mTextureFormat) {
+            // recycle with the size the texture was allocated with
             cleanTexture();
+            mSize = textureSize;
+            mTextureFormat = format;
         }
     }
 
     @Override
     protected void performUpdates(RenderContext context) {
         super.performUpdates(context);
-        if (mImage == null && !mDirtyTile) {
-            return;
+        if (mImage != null) {
+            validateTexture();
+            uploadNewTexture();
+            mDirtyRect.setEmpty();
         }
-        validateTexture();
-        uploadNewTexture();
-        mDirtyTile = false;
+        if (!mImageParts.isEmpty()) {
+            uploadImageParts();
+        }
+    }
+
+    private void uploadImageParts() {
+        if (mTextureAllocated && !mSolidColor) {
+            bindAndSetGLParameters();
+            for (int i = 0; i < mImageParts.size(); i++) {
+                CairoImage part = mImageParts.get(i);
+                ByteBuffer partBuffer = part.getBuffer();
+                if (partBuffer == null || part.getFormat() != mTextureFormat) {
+                    continue;
+                }
+                Rect partRect = mImagePartRects.get(i);
+                CairoGLInfo glInfo = new CairoGLInfo(part.getFormat());
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, getTextureX() + partRect.left, getTextureY() + partRect.top,
+                        partRect.width(), partRect.height(), glInfo.format, glInfo.type, partBuffer);
+                countUpload(partRect.width(), partRect.height(), glInfo);
+                uploadGutter(partBuffer, partRect, glInfo);
+            }
+        }
+        destroyImageParts();
     }
 
     private void uploadNewTexture() {
         ByteBuffer imageBuffer = mImage.getBuffer();
+        if (mImage instanceof SolidColorCairoImage) {
+            ((SolidColorCairoImage) mImage).writePixel(sPixelBuffer);
+            imageBuffer = sPixelBuffer;
+        }
         if (imageBuffer == null) {
             return;
         }
 
-        if (mTextureIDs == null) {
+        if (!initialized()) {
+            mAtlasSlot = TileTextureAtlas.get().allocate(mSize, mTextureFormat);
+            if (mAtlasSlot != null) {
+                mTextureRect = mAtlasSlot.getTextureRect();
+            }
+        }
+        if (!initialized()) {
             mTextureIDs = new int[1];
-            GLES20.glGenTextures(mTextureIDs.length, mTextureIDs, 0);
+            mTextureIDs[0] = TextureGenerator.get().takeRecycled(mSize, mTextureFormat);
+            mTextureAllocated = mTextureIDs[0] != 0;
+            if (!mTextureAllocated) {
+                mTextureIDs[0] = TextureGenerator.get().poll();
+            }
+            if (mTextureIDs[0] == 0) {
+                GLES20.glGenTextures(mTextureIDs.length, mTextureIDs, 0);
+            }
         }
 
         int cairoFormat = mImage.getFormat();
@@ -162,22 +418,134 @@ public class SubTile extends Layer {
 
         IntSize bufferSize = mImage.getSize();
 
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, glInfo.internalFormat,
-                mSize.width, mSize.height, 0, glInfo.format, glInfo.type, imageBuffer);
+        if (!mTextureAllocated && mAtlasSlot != null) {
+            // the atlas page is allocated already
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, mAtlasSlot.x, mAtlasSlot.y,
+                    bufferSize.width, bufferSize.height, glInfo.format, glInfo.type, imageBuffer);
+            mTextureAllocated = true;
+            countUpload(bufferSize.width, bufferSize.height, glInfo);
+            uploadGutter(imageBuffer, new Rect(0, 0, bufferSize.width, bufferSize.height), glInfo);
+        } else if (!mTextureAllocated) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, glInfo.internalFormat,
+                    mSize.width, mSize.height, 0, glInfo.format, glInfo.type, imageBuffer);
+            mTextureAllocated = true;
+            countUpload(mSize.width, mSize.height, glInfo);
+        } else if (!mDirtyRect.isEmpty()) {
+            // GLES 2.0 has no GL_UNPACK_ROW_LENGTH, so upload the full width rows of the dirty rect
+            int top = Math.max(0, mDirtyRect.top);
+            int bottom = Math.min(bufferSize.height, mDirtyRect.bottom);
+            imageBuffer.position(top * bufferSize.width * glInfo.bytesPerPixel);
+            ByteBuffer dirtyBuffer = imageBuffer.slice();
+            imageBuffer.position(0);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, getTextureX(), getTextureY() + top, bufferSize.width, bottom - top,
+                    glInfo.format, glInfo.type, dirtyBuffer);
+            countUpload(bufferSize.width, bottom - top, glInfo);
+            uploadGutter(dirtyBuffer, new Rect(0, top, bufferSize.width, bottom), glInfo);
+        }
 
-        destroyImage();
+        // the image buffer is copied by GL, so give it back to the allocator pool
+        mImage.destroy();
+        mImage = null;
+    }
+
+    private static void countUpload(int width, int height, CairoGLInfo glInfo) {
+        sUploads.increment();
+        sUploadBytes.add((long) width * height * glInfo.bytesPerPixel);
+    }
+
+    /**
+     * Copy the edge pixels of an uploaded rect of the tile into the gutter around its atlas slot,
+     * so linear filtering at the tile edge samples the tile and not the neighbouring slot. The
+     * buffer holds the pixels of the rect (in tile pixels), its rows tightly packed.
+     */
+    private void uploadGutter(ByteBuffer buffer, Rect rect, CairoGLInfo glInfo) {
+        if (mAtlasSlot == null || !mAtlasSlot.hasGutter() || rect.isEmpty()) {
+            return;
+        }
+        IntSize size = mAtlasSlot.size;
+        int rowBytes = rect.width() * glInfo.bytesPerPixel;
+        if (rect.top == 0) {
+            buffer.position(0);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, mAtlasSlot.x + rect.left, mAtlasSlot.y - 1,
+                    rect.width(), 1, glInfo.format, glInfo.type, buffer.slice());
+        }
+        if (rect.bottom == size.height) {
+            buffer.position((rect.height() - 1) * rowBytes);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, mAtlasSlot.x + rect.left, mAtlasSlot.y + size.height,
+                    rect.width(), 1, glInfo.format, glInfo.type, buffer.slice());
+        }
+        buffer.position(0);
+        if (rect.left == 0) {
+            uploadGutterColumn(buffer, rect, 0, mAtlasSlot.x - 1, glInfo);
+        }
+        if (rect.right == size.width) {
+            uploadGutterColumn(buffer, rect, rect.width() - 1, mAtlasSlot.x + size.width, glInfo);
+        }
+    }
+
+    /* Upload a column of the rect into the gutter column at x, reaching into the gutter corners. */
+    private void uploadGutterColumn(ByteBuffer buffer, Rect rect, int column, int x, CairoGLInfo glInfo) {
+        int bytesPerPixel = glInfo.bytesPerPixel;
+        int top = rect.top == 0 ? -1 : rect.top;
+        int bottom = rect.bottom == mAtlasSlot.size.height ? rect.bottom + 1 : rect.bottom;
+        int bytes = (bottom - top) * bytesPerPixel;
+        if (sGutterBuffer == null || sGutterBuffer.capacity() < bytes) {
+            sGutterBuffer = ByteBuffer.allocateDirect(bytes);
+        }
+        sGutterBuffer.clear();
+        for (int row = top; row < bottom; row++) {
+            int sourceRow = Math.min(Math.max(row, rect.top), rect.bottom - 1) - rect.top;
+            int position = (sourceRow * rect.width() + column) * bytesPerPixel;
+            for (int i = 0; i < bytesPerPixel; i++) {
+                sGutterBuffer.put(buffer.get(position + i));
+            }
+        }
+        sGutterBuffer.flip();
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, mAtlasSlot.y + top, 1, bottom - top,
+                glInfo.format, glInfo.type, sGutterBuffer);
+    }
+
+    /* Position of the tile content in the texture, which is not the origin in an atlas page. */
+    private int getTextureX() {
+        return mAtlasSlot != null ? mAtlasSlot.x : 0;
+    }
+
+    private int getTextureY() {
+        return mAtlasSlot != null ? mAtlasSlot.y : 0;
     }
 
     private void bindAndSetGLParameters() {
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIDs[0]);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTextureID());
 
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // the rows of the buffers are tightly packed, parts of odd width in RGB565 are not 4 byte aligned
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+    }
+
+    /**
+     * Add the quad of the tile to the batch if the tile has a texture and intersects the viewport.
+     * @return true if the tile was added
+     */
+    public boolean addToBatch(TileVertexBatch batch, int pass, RenderContext context) {
+        if (!initialized()) {
+            return false;
+        }
+        RectF bounds = getBounds(context);
+        if (!RectF.intersects(bounds, context.viewport)) {
+            return false;
+        }
+        mLastUsedTime = SystemClock.uptimeMillis();
+        batch.addQuad(pass, getTextureID(), bounds, context.viewport, mTextureRect);
+        return true;
     }
 
+    /**
+     * Draws the tile alone, ComposedTileLayer draws its tiles batched by addToBatch instead.
+     */
     @Override
     public void draw(RenderContext context) {
         // mTextureIDs may be null here during startup if Layer.java's draw method
@@ -185,61 +553,49 @@ public class SubTile extends Layer {
         if (!initialized())
             return;
 
+        mLastUsedTime = SystemClock.uptimeMillis();
         mViewport.set(context.viewport);
-
         mBounds.set(getBounds(context));
-        mTextureBounds.set(mBounds);
-
-        mBounds.roundOut(mIntBounds);
-        mMaskedBounds.set(mIntBounds);
-
-        // XXX Possible optimisation here, form this array so we can draw it in
-        //     a single call.
-        RegionIterator iterator = new RegionIterator(mMaskedBounds);
-        while (iterator.next(mSubRect)) {
-            // Compensate for rounding errors at the edge of the tile caused by
-            // the roundOut above
-            mSubRectF.set(Math.max(mBounds.left, (float) mSubRect.left),
-                    Math.max(mBounds.top, (float) mSubRect.top),
-                    Math.min(mBounds.right, (float) mSubRect.right),
-                    Math.min(mBounds.bottom, (float) mSubRect.bottom));
-
-            // This is the left/top/right/bottom of the rect, relative to the
-            // bottom-left of the layer, to use for texture coordinates.
-            mCropRect.set(Math.round(mSubRectF.left - mBounds.left),
-                    Math.round(mBounds.bottom - mSubRectF.top),
-                    Math.round(mSubRectF.right - mBounds.left),
-                    Math.round(mBounds.bottom - mSubRectF.bottom));
-
-            mObjRectF.set(mSubRectF.left - mViewport.left,
-                    mViewport.bottom - mSubRectF.bottom,
-                    mSubRectF.right - mViewport.left,
-                    mViewport.bottom - mSubRectF.top);
-
-            fillRectCoordBuffer(mCoords, mObjRectF, mViewport.width(), mViewport.height(), mCropRect, mTextureBounds.width(), mTextureBounds.height());
-
-            FloatBuffer coordBuffer = context.coordBuffer;
-            int positionHandle = context.positionHandle;
-            int textureHandle = context.textureHandle;
-
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTextureID());
-
-            // Make sure we are at position zero in the buffer
-            coordBuffer.position(0);
-            coordBuffer.put(mCoords);
-
-            // Unbind any the current array buffer so we can use client side buffers
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-            // Vertex coordinates are x,y,z starting at position 0 into the buffer.
-            coordBuffer.position(0);
-            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 20, coordBuffer);
-
-            // Texture coordinates are texture_x, texture_y starting at position 3 into the buffer.
-            coordBuffer.position(3);
-            GLES20.glVertexAttribPointer(textureHandle, 2, GLES20.GL_FLOAT, false, 20, coordBuffer);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        // This is the left/top/right/bottom of the tile, relative to the
+        // bottom-left of the layer, to use for texture coordinates.
+        mCropRect.set(0, Math.round(mBounds.height()), Math.round(mBounds.width()), 0);
+
+        mObjRectF.set(mBounds.left - mViewport.left,
+                mViewport.bottom - mBounds.bottom,
+                mBounds.right - mViewport.left,
+                mViewport.bottom - mBounds.top);
+
+        fillRectCoordBuffer(mCoords, mObjRectF, mViewport.width(), mViewport.height(), mCropRect, Math.round(mBounds.width()), Math.round(mBounds.height()));
+        if (mTextureRect != null) {
+            // map the texture coordinates into the atlas slot
+            for (int i = 0; i < mCoords.length; i += 5) {
+                mCoords[i + 3] = mTextureRect.left + mCoords[i + 3] * mTextureRect.width();
+                mCoords[i + 4] = mTextureRect.top + mCoords[i + 4] * mTextureRect.height();
+            }
         }
+
+        FloatBuffer coordBuffer = context.coordBuffer;
+        int positionHandle = context.positionHandle;
+        int textureHandle = context.textureHandle;
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTextureID());
+
+        // Make sure we are at position zero in the buffer
+        coordBuffer.position(0);
+        coordBuffer.put(mCoords);
+
+        // Unbind any the current array buffer so we can use client side buffers
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        // Vertex coordinates are x,y,z starting at position 0 into the buffer.
+        coordBuffer.position(0);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 20, coordBuffer);
+
+        // Texture coordinates are texture_x, texture_y starting at position 3 into the buffer.
+        coordBuffer.position(3);
+        GLES20.glVertexAttribPointer(textureHandle, 2, GLES20.GL_FLOAT, false, 20, coordBuffer);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
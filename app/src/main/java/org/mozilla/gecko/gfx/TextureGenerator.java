@@ -2,6 +2,9 @@ package org.mozilla.gecko.gfx;
 
 import android.opengl.GLES20;
 import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLContext;
@@ -9,17 +12,22 @@ import javax.microedition.khronos.egl.EGLContext;
 public class TextureGenerator {
     private static final String LOGTAG = "TextureGenerator";
     private static final int POOL_SIZE = 5;
+    /* Maximum number of recycled textures kept per texture size. */
+    private static final int RECYCLED_POOL_SIZE = 16;
 
     private static TextureGenerator sSharedInstance;
 
     private final ArrayBlockingQueue<Integer> mTextureIds;
+    /* Textures which already have storage allocated, keyed by texture size and format. */
+    private final HashMap<Long, ArrayDeque<Integer>> mRecycledTextureIds;
     private EGLContext mContext;
 
     private TextureGenerator() {
         mTextureIds = new ArrayBlockingQueue<Integer>(POOL_SIZE);
+        mRecycledTextureIds = new HashMap<Long, ArrayDeque<Integer>>();
     }
 
-    public static TextureGenerator get() {
+    public static synchronized TextureGenerator get() {
         if (sSharedInstance == null)
             sSharedInstance = new TextureGenerator();
         return sSharedInstance;
@@ -34,12 +42,77 @@ public class TextureGenerator {
         }
     }
 
+    /**
+     * Returns a fresh texture ID without blocking, or 0 if the pool is empty.
+     */
+    public synchronized int poll() {
+        Integer textureId = mTextureIds.poll();
+        return textureId == null ? 0 : textureId;
+    }
+
+    /**
+     * Returns a recycled texture whose storage is already allocated with the given size and cairo
+     * format, or 0 if there is none. The texture content is undefined.
+     */
+    public synchronized int takeRecycled(IntSize size, int cairoFormat) {
+        ArrayDeque<Integer> textureIds = mRecycledTextureIds.get(getKey(size, cairoFormat));
+        if (textureIds == null || textureIds.isEmpty()) {
+            return 0;
+        }
+        return textureIds.pop();
+    }
+
+    /**
+     * Keep a texture of the given size and cairo format for reuse by takeRecycled. If enough
+     * textures of the kind are kept already, the texture is handed to the TextureReaper.
+     * Can be called from any thread.
+     */
+    public synchronized void recycle(int textureId, IntSize size, int cairoFormat) {
+        long key = getKey(size, cairoFormat);
+        ArrayDeque<Integer> textureIds = mRecycledTextureIds.get(key);
+        if (textureIds == null) {
+            textureIds = new ArrayDeque<Integer>();
+            mRecycledTextureIds.put(key, textureIds);
+        }
+        if (size.isPositive() && textureIds.size() < RECYCLED_POOL_SIZE) {
+            textureIds.push(textureId);
+        } else {
+            TextureReaper.get().add(textureId);
+        }
+    }
+
+    /**
+     * Hand all recycled textures to the TextureReaper.
+     * @return estimated number of bytes released
+     */
+    public synchronized long releaseRecycled() {
+        long released = 0;
+        for (Map.Entry<Long, ArrayDeque<Integer>> entry : mRecycledTextureIds.entrySet()) {
+            long key = entry.getKey();
+            int width = (int) (key >>> 36);
+            int height = (int) ((key >>> 8) & 0xfffffff);
+            int bytesPerPixel = new CairoGLInfo((int) (key & 0xff)).bytesPerPixel;
+            for (int textureId : entry.getValue()) {
+                TextureReaper.get().add(textureId);
+                released += (long) width * height * bytesPerPixel;
+            }
+        }
+        mRecycledTextureIds.clear();
+        return released;
+    }
+
+    private static long getKey(IntSize size, int cairoFormat) {
+        return ((long) size.width << 36) | ((long) size.height << 8) | (cairoFormat & 0xff);
+    }
+
     public synchronized void fill() {
         EGL10 egl = (EGL10) EGLContext.getEGL();
         EGLContext context = egl.eglGetCurrentContext();
 
         if (mContext != null && mContext != context) {
+            // the IDs belong to the old context
             mTextureIds.clear();
+            mRecycledTextureIds.clear();
         }
 
         mContext = context;
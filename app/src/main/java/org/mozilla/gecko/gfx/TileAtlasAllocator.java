@@ -0,0 +1,195 @@
+package org.mozilla.gecko.gfx;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Allocates equally sized slots in the pages of a texture atlas. A slot is identified by its page
+ * and its index in the page, combined into one int by getSlot. Slots are handed out from the
+ * lowest page with a free slot, so the tiles stay packed into few pages and the others become
+ * empty and can be released.
+ *
+ * Plain data structure without GL calls, not thread safe.
+ */
+public class TileAtlasAllocator {
+    private final int mSlotsPerPage;
+    /* Free slot indices of each page, null for released pages. */
+    private final List<int[]> mFreeSlots = new ArrayList<int[]>();
+    private final List<Integer> mFreeCounts = new ArrayList<Integer>();
+    /* Allocated slot indices of each page, null for released pages. */
+    private final List<BitSet> mAllocatedSlots = new ArrayList<BitSet>();
+    /* Pages which have a free slot. */
+    private final TreeSet<Integer> mPagesWithFreeSlots = new TreeSet<Integer>();
+    private int mPageCount = 0;
+    private int mUsedSlotCount = 0;
+
+    public TileAtlasAllocator(int slotsPerPage) {
+        if (slotsPerPage <= 0) {
+            throw new IllegalArgumentException("Invalid number of slots per page: " + slotsPerPage);
+        }
+        mSlotsPerPage = slotsPerPage;
+    }
+
+    public int getSlotsPerPage() {
+        return mSlotsPerPage;
+    }
+
+    public int getSlot(int page, int index) {
+        return page * mSlotsPerPage + index;
+    }
+
+    public int getPage(int slot) {
+        return slot / mSlotsPerPage;
+    }
+
+    public int getIndex(int slot) {
+        return slot % mSlotsPerPage;
+    }
+
+    /**
+     * Returns a free slot, adding a page if all pages are full. The page of the slot may be new,
+     * see isPageAllocated.
+     */
+    public int allocate() {
+        int page;
+        if (mPagesWithFreeSlots.isEmpty()) {
+            page = addPage();
+        } else {
+            page = mPagesWithFreeSlots.first();
+        }
+        int freeCount = mFreeCounts.get(page) - 1;
+        int index = mFreeSlots.get(page)[freeCount];
+        mFreeCounts.set(page, freeCount);
+        mAllocatedSlots.get(page).set(index);
+        if (freeCount == 0) {
+            mPagesWithFreeSlots.remove(page);
+        }
+        mUsedSlotCount++;
+        return getSlot(page, index);
+    }
+
+    /* Add a page, reusing the lowest index of a released page. */
+    private int addPage() {
+        int page = mFreeSlots.indexOf(null);
+        int[] freeSlots = new int[mSlotsPerPage];
+        // the slots are taken from the end, so the lowest index goes first
+        for (int i = 0; i < mSlotsPerPage; i++) {
+            freeSlots[i] = mSlotsPerPage - 1 - i;
+        }
+        if (page < 0) {
+            page = mFreeSlots.size();
+            mFreeSlots.add(freeSlots);
+            mFreeCounts.add(mSlotsPerPage);
+            mAllocatedSlots.add(new BitSet(mSlotsPerPage));
+        } else {
+            mFreeSlots.set(page, freeSlots);
+            mFreeCounts.set(page, mSlotsPerPage);
+            mAllocatedSlots.set(page, new BitSet(mSlotsPerPage));
+        }
+        mPagesWithFreeSlots.add(page);
+        mPageCount++;
+        return page;
+    }
+
+    /**
+     * Give the slot back.
+     * @throws IllegalArgumentException if the slot is not allocated, e.g. freed already
+     */
+    public void free(int slot) {
+        if (!isSlotAllocated(slot)) {
+            throw new IllegalArgumentException("Slot " + slot + " is not allocated");
+        }
+        int page = getPage(slot);
+        int index = getIndex(slot);
+        int freeCount = mFreeCounts.get(page);
+        mAllocatedSlots.get(page).clear(index);
+        mFreeSlots.get(page)[freeCount] = index;
+        mFreeCounts.set(page, freeCount + 1);
+        mPagesWithFreeSlots.add(page);
+        mUsedSlotCount--;
+    }
+
+    public boolean isSlotAllocated(int slot) {
+        if (slot < 0 || !isPageAllocated(getPage(slot))) {
+            return false;
+        }
+        return mAllocatedSlots.get(getPage(slot)).get(getIndex(slot));
+    }
+
+    public boolean isPageAllocated(int page) {
+        return page >= 0 && page < mFreeSlots.size() && mFreeSlots.get(page) != null;
+    }
+
+    /**
+     * Release the pages without used slots, keeping the given number of empty pages for reuse.
+     * @param releasedPages - the released pages are added to it
+     */
+    public void releaseEmptyPages(int keep, List<Integer> releasedPages) {
+        int kept = 0;
+        for (int page = 0; page < mFreeSlots.size(); page++) {
+            if (mFreeSlots.get(page) == null || mFreeCounts.get(page) != mSlotsPerPage) {
+                continue;
+            }
+            if (kept < keep) {
+                kept++;
+                continue;
+            }
+            mFreeSlots.set(page, null);
+            mFreeCounts.set(page, 0);
+            mAllocatedSlots.set(page, null);
+            mPagesWithFreeSlots.remove(page);
+            mPageCount--;
+            releasedPages.add(page);
+        }
+    }
+
+    /**
+     * Number of allocated pages.
+     */
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    public int getUsedSlotCount() {
+        return mUsedSlotCount;
+    }
+
+    /**
+     * Number of free slots in the allocated pages.
+     */
+    public int getFreeSlotCount() {
+        return mPageCount * mSlotsPerPage - mUsedSlotCount;
+    }
+
+    /**
+     * Number of allocated pages without used slots.
+     */
+    public int getEmptyPageCount() {
+        int emptyPages = 0;
+        for (int page = 0; page < mFreeSlots.size(); page++) {
+            if (mFreeSlots.get(page) != null && mFreeCounts.get(page) == mSlotsPerPage) {
+                emptyPages++;
+            }
+        }
+        return emptyPages;
+    }
+
+    /**
+     * Number of pages more than needed for the used slots if they were packed.
+     */
+    public int getExcessPageCount() {
+        return mPageCount - (mUsedSlotCount + mSlotsPerPage - 1) / mSlotsPerPage;
+    }
+
+    /**
+     * Fraction of the slots of the allocated pages which are free, 0 if there are no pages.
+     */
+    public float getFragmentation() {
+        if (mPageCount == 0) {
+            return 0;
+        }
+        return (float) getFreeSlotCount() / (mPageCount * mSlotsPerPage);
+    }
+}
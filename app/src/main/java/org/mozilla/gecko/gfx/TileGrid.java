@@ -0,0 +1,213 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.RectF;
+
+import org.libreoffice.data.TileIdentifier;
+import org.mozilla.gecko.util.FloatUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Spatial index of the tiles of a ComposedTileLayer. Tiles are bucketed by zoom and stored by
+ * grid row and column, so lookups, rect queries and collecting the tiles outside of a rect only
+ * touch the affected tiles instead of scanning all of them.
+ *
+ * Not thread safe, ComposedTileLayer guards it with its read/write lock.
+ */
+public class TileGrid implements Iterable<SubTile> {
+    private final IntSize mTileSize;
+    /* zoom -> row -> column -> tile */
+    private final HashMap<Float, TreeMap<Integer, TreeMap<Integer, SubTile>>> mLevels =
+            new HashMap<Float, TreeMap<Integer, TreeMap<Integer, SubTile>>>();
+    private int mSize = 0;
+
+    public TileGrid(IntSize tileSize) {
+        mTileSize = tileSize;
+    }
+
+    private int column(int x) {
+        return Math.floorDiv(x, mTileSize.width);
+    }
+
+    private int row(int y) {
+        return Math.floorDiv(y, mTileSize.height);
+    }
+
+    /**
+     * Returns the tile at the given (scaled) position and zoom, or null.
+     */
+    public SubTile get(int x, int y, float zoom) {
+        TreeMap<Integer, TreeMap<Integer, SubTile>> level = mLevels.get(zoom);
+        if (level == null) {
+            return null;
+        }
+        TreeMap<Integer, SubTile> row = level.get(row(y));
+        if (row == null) {
+            return null;
+        }
+        SubTile tile = row.get(column(x));
+        if (tile == null || tile.id.x != x || tile.id.y != y) {
+            return null;
+        }
+        return tile;
+    }
+
+    public boolean contains(int x, int y, float zoom) {
+        return get(x, y, zoom) != null;
+    }
+
+    /**
+     * Adds the tile, replacing (and returning) a tile with the same grid position and zoom.
+     */
+    public SubTile put(SubTile tile) {
+        TileIdentifier id = tile.id;
+        TreeMap<Integer, TreeMap<Integer, SubTile>> level = mLevels.get(id.zoom);
+        if (level == null) {
+            level = new TreeMap<Integer, TreeMap<Integer, SubTile>>();
+            mLevels.put(id.zoom, level);
+        }
+        int rowIndex = row(id.y);
+        TreeMap<Integer, SubTile> row = level.get(rowIndex);
+        if (row == null) {
+            row = new TreeMap<Integer, SubTile>();
+            level.put(rowIndex, row);
+        }
+        SubTile previous = row.put(column(id.x), tile);
+        if (previous == null) {
+            mSize++;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the given tile, returns false if the tile is not part of the grid.
+     */
+    public boolean remove(SubTile tile) {
+        TileIdentifier id = tile.id;
+        TreeMap<Integer, TreeMap<Integer, SubTile>> level = mLevels.get(id.zoom);
+        if (level == null) {
+            return false;
+        }
+        int rowIndex = row(id.y);
+        TreeMap<Integer, SubTile> row = level.get(rowIndex);
+        if (row == null) {
+            return false;
+        }
+        int columnIndex = column(id.x);
+        if (row.get(columnIndex) != tile) {
+            return false;
+        }
+        row.remove(columnIndex);
+        mSize--;
+        if (row.isEmpty()) {
+            level.remove(rowIndex);
+            if (level.isEmpty()) {
+                mLevels.remove(id.zoom);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the tiles of the zoom level which intersect the (scaled) rect to the output list.
+     */
+    public void collectIntersecting(RectF rect, float zoom, List<SubTile> output) {
+        int firstColumn = (int) Math.floor(rect.left / mTileSize.width);
+        int lastColumn = (int) Math.ceil(rect.right / mTileSize.width) - 1;
+        int firstRow = (int) Math.floor(rect.top / mTileSize.height);
+        int lastRow = (int) Math.ceil(rect.bottom / mTileSize.height) - 1;
+        if (firstColumn > lastColumn || firstRow > lastRow) {
+            return;
+        }
+        for (Map.Entry<Float, TreeMap<Integer, TreeMap<Integer, SubTile>>> level : mLevels.entrySet()) {
+            if (!FloatUtils.fuzzyEquals(level.getKey(), zoom)) {
+                continue;
+            }
+            for (TreeMap<Integer, SubTile> row : level.getValue().subMap(firstRow, true, lastRow, true).values()) {
+                output.addAll(row.subMap(firstColumn, true, lastColumn, true).values());
+            }
+        }
+    }
+
+    /**
+     * Adds all tiles that don't intersect the (scaled) rect at the zoom level, and all tiles of
+     * other zoom levels, to the output list.
+     */
+    public void collectOutside(RectF rect, float zoom, List<SubTile> output) {
+        int firstColumn = (int) Math.floor(rect.left / mTileSize.width);
+        int lastColumn = (int) Math.ceil(rect.right / mTileSize.width) - 1;
+        int firstRow = (int) Math.floor(rect.top / mTileSize.height);
+        int lastRow = (int) Math.ceil(rect.bottom / mTileSize.height) - 1;
+        for (Map.Entry<Float, TreeMap<Integer, TreeMap<Integer, SubTile>>> level : mLevels.entrySet()) {
+            TreeMap<Integer, TreeMap<Integer, SubTile>> rows = level.getValue();
+            if (!FloatUtils.fuzzyEquals(level.getKey(), zoom) || firstColumn > lastColumn || firstRow > lastRow) {
+                for (TreeMap<Integer, SubTile> row : rows.values()) {
+                    output.addAll(row.values());
+                }
+                continue;
+            }
+            for (TreeMap<Integer, SubTile> row : rows.headMap(firstRow, false).values()) {
+                output.addAll(row.values());
+            }
+            for (TreeMap<Integer, SubTile> row : rows.tailMap(lastRow, false).values()) {
+                output.addAll(row.values());
+            }
+            for (TreeMap<Integer, SubTile> row : rows.subMap(firstRow, true, lastRow, true).values()) {
+                output.addAll(row.headMap(firstColumn, false).values());
+                output.addAll(row.tailMap(lastColumn, false).values());
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        mLevels.clear();
+        mSize = 0;
+    }
+
+    @Override
+    public Iterator<SubTile> iterator() {
+        return new TileIterator();
+    }
+
+    private class TileIterator implements Iterator<SubTile> {
+        private final Iterator<TreeMap<Integer, TreeMap<Integer, SubTile>>> mLevelIterator = mLevels.values().iterator();
+        private Iterator<TreeMap<Integer, SubTile>> mRowIterator = Collections.emptyIterator();
+        private Iterator<SubTile> mTileIterator = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!mTileIterator.hasNext()) {
+                while (!mRowIterator.hasNext()) {
+                    if (!mLevelIterator.hasNext()) {
+                        return false;
+                    }
+                    mRowIterator = mLevelIterator.next().values().iterator();
+                }
+                mTileIterator = mRowIterator.next().values().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public SubTile next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return mTileIterator.next();
+        }
+    }
+}
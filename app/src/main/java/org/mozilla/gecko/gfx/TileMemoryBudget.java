@@ -0,0 +1,127 @@
+package org.mozilla.gecko.gfx;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Upper bound of the memory used by the tiles of all ComposedTileLayers together. When the tiles
+ * use more than the budget, tiles outside of the display ports are evicted in least recently
+ * used order, where every tile of distance to the visible viewport ages a tile further. The tiles
+ * of the display ports are never evicted, as the layers would request them again right away. Distances
+ * are measured in tiles of the layer, so the low resolution tiles, which each cover a large area,
+ * are kept longer than high resolution tiles at the same distance. Tiles of an old zoom are
+ * evicted first.
+ */
+public class TileMemoryBudget {
+    private static final String LOGTAG = TileMemoryBudget.class.getSimpleName();
+    /* The default budget is this fraction of the memory class. */
+    private static final int MEMORY_CLASS_DIVISOR = 4;
+    /* Age added to a tile per tile of distance to the visible viewport. */
+    private static final long DISTANCE_AGE_MILLIS = 500;
+
+    private final List<ComposedTileLayer> mLayers = new ArrayList<ComposedTileLayer>();
+    private volatile long mBudget;
+
+    public TileMemoryBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mBudget = (long) activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+    }
+
+    public synchronized void addLayer(ComposedTileLayer layer) {
+        mLayers.add(layer);
+    }
+
+    public void setBudget(long bytes) {
+        mBudget = bytes;
+    }
+
+    public long getBudget() {
+        return mBudget;
+    }
+
+    public synchronized long getBytesInUse() {
+        long bytesInUse = 0;
+        for (ComposedTileLayer layer : mLayers) {
+            bytesInUse += layer.getMemoryUsage();
+        }
+        return bytesInUse;
+    }
+
+    public synchronized int getTileCount() {
+        int count = 0;
+        for (ComposedTileLayer layer : mLayers) {
+            count += layer.getTileCount();
+        }
+        return count;
+    }
+
+    /**
+     * Evict tiles until all tiles fit in the budget, or only the tiles of the display ports are
+     * left. Only valid inside a transaction of all layers.
+     * @return estimated number of bytes released
+     */
+    public long enforce() {
+        return enforce(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Like enforce(), but the tile ages are measured at the time now, on the clock the last use
+     * times of the tiles were set with.
+     */
+    synchronized long enforce(long now) {
+        long budget = mBudget;
+        long bytesInUse = getBytesInUse();
+        if (bytesInUse <= budget) {
+            return 0;
+        }
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (ComposedTileLayer layer : mLayers) {
+            layer.collectEvictionCandidates(candidates, now);
+        }
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Long.compare(b.score, a.score);
+            }
+        });
+
+        long released = 0;
+        for (Candidate candidate : candidates) {
+            if (bytesInUse - released <= budget) {
+                break;
+            }
+            released += candidate.layer.evictTile(candidate.tile);
+        }
+        if (released > 0) {
+            Log.d(LOGTAG, "Tiles used " + bytesInUse + " of " + budget + " bytes, released " + released + " bytes");
+        }
+        return released;
+    }
+
+    /**
+     * Returns the age of a tile used for eviction, higher values are evicted first.
+     */
+    static long getEvictionScore(long age, float distanceInTiles) {
+        return age + (long) (distanceInTiles * DISTANCE_AGE_MILLIS);
+    }
+
+    static class Candidate {
+        final ComposedTileLayer layer;
+        final SubTile tile;
+        final long score;
+
+        Candidate(ComposedTileLayer layer, SubTile tile, long score) {
+            this.layer = layer;
+            this.tile = tile;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,723 @@
+package org.mozilla.gecko.gfx;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+import android.view.KeyEvent;
+
+import org.libreoffice.TileProvider;
+import org.libreoffice.callback.EventCallback;
+import org.libreoffice.data.LOEvent;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays a trace of a ViewportRecorder headlessly against a DynamicTileLayer and a
+ * FixedZoomTileLayer of its own, which are not attached to a renderer, to compare display port
+ * (prefetch) strategies and memory budgets (eviction) on real gestures. It reports the tiles
+ * requested, the tiles rendered and discarded without ever being visible, the peak tile count and
+ * the checkerboard area of every frame.
+ *
+ * The decisions of the GeckoLayerClient when to reevaluate the tiles, the reevaluation throttle of
+ * the layers and the tile rendering of the LOKit thread are simulated on the timeline of the trace.
+ * Tiles are rendered one after another by a fake TileProvider which takes a fixed time per tile,
+ * and count as visible as soon as they are rendered. Nothing is uploaded, so no tiles become stale
+ * tiles. The tiles count as used when they are requested and in every frame they are visible in,
+ * and are aged for eviction on the clock of the trace.
+ */
+public class TileReplayHarness {
+    private static final String LOGTAG = TileReplayHarness.class.getSimpleName();
+
+    private static final long DEFAULT_TILE_RENDER_MILLIS = 10;
+    private static final long DEFAULT_REEVALUATION_INTERVAL_MILLIS = 25;
+    /* Edge length of the cells the checkerboard area is sampled with, in screen pixels. */
+    private static final int COVERAGE_CELL_SIZE = 8;
+
+    private static final byte NOT_COVERED = 0;
+    private static final byte COVERED_LOW_RES = 1;
+    private static final byte COVERED = 2;
+
+    private final Context mContext;
+    private long mTileRenderNanos = DEFAULT_TILE_RENDER_MILLIS * 1000000;
+    private long mReevaluationIntervalNanos = DEFAULT_REEVALUATION_INTERVAL_MILLIS * 1000000;
+    private int mDisplayPortStrategy = -1;
+    private long mMemoryBudget = -1;
+
+    public TileReplayHarness(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Set the time the fake TileProvider takes to render a tile.
+     */
+    public void setTileRenderTime(long millis) {
+        mTileRenderNanos = millis * 1000000;
+    }
+
+    public void setReevaluationInterval(long millis) {
+        mReevaluationIntervalNanos = millis * 1000000;
+    }
+
+    /**
+     * Set the display port strategy by its gfx.displayport.strategy index, -1 for the default.
+     */
+    public void setDisplayPortStrategy(int strategy) {
+        mDisplayPortStrategy = strategy;
+    }
+
+    /**
+     * Set the tile memory budget in bytes, -1 for the default budget of the device.
+     */
+    public void setMemoryBudget(long bytes) {
+        mMemoryBudget = bytes;
+    }
+
+    public Report replay(File traceFile) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(traceFile)));
+        try {
+            if (input.readInt() != ViewportRecorder.MAGIC || input.readInt() != ViewportRecorder.VERSION) {
+                throw new IOException("Not a viewport trace: " + traceFile);
+            }
+            int tileSize = input.readInt();
+            Replay replay = new Replay(new IntSize(tileSize, tileSize));
+            try {
+                while (true) {
+                    long time;
+                    try {
+                        time = input.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    replay.processEvent(time, input);
+                }
+                Report report = replay.finish();
+                Log.i(LOGTAG, "Replayed " + traceFile.getName() + ": " + report);
+                return report;
+            } finally {
+                replay.release();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * State of a single replay, the layers are driven as GeckoLayerClient and the LOKit thread
+     * drive them.
+     */
+    private class Replay implements EventCallback {
+        private final DynamicTileLayer mRootLayer;
+        private final FixedZoomTileLayer mLowResLayer;
+        private final TileMemoryBudget mTileMemoryBudget;
+        private final DisplayPortCalculator mDisplayPortCalculator;
+        private final TileProvider mTileProvider = new FakeTileProvider();
+
+        /* GeckoLayerClient */
+        private ImmutableViewportMetrics mViewportMetrics;
+        private PointF mVelocity = new PointF();
+        private boolean mRedrawHint;
+        private boolean mForceRedraw = true;
+        private DisplayPortMetrics mDisplayPort = new DisplayPortMetrics();
+
+        /* Reevaluation throttle of the layers */
+        private long mReevaluationTime = Long.MIN_VALUE / 2;
+        private boolean mReevaluationPending;
+        private ImmutableViewportMetrics mPendingViewportMetrics;
+        private DisplayPortMetrics mPendingDisplayPort;
+
+        /* LOKit thread, the reevaluation requests are coalesced per layer */
+        private final Set<ComposedTileLayer> mQueuedLayers = new LinkedHashSet<ComposedTileLayer>();
+        private long mWorkerTime;
+        private ComposedTileLayer mJobLayer;
+        private List<SubTile> mJobTiles;
+        private int mJobIndex;
+        private final List<SubTile> mJobCancelledTiles = new ArrayList<SubTile>();
+
+        private final Set<SubTile> mRenderedTiles = Collections.newSetFromMap(new IdentityHashMap<SubTile, Boolean>());
+        private final Set<SubTile> mSeenTiles = Collections.newSetFromMap(new IdentityHashMap<SubTile, Boolean>());
+        private byte[] mCells = new byte[0];
+
+        private final Report mReport = new Report();
+        private int mFrameTilesRequested;
+        private int mFrameTilesRendered;
+
+        Replay(IntSize tileSize) {
+            mRootLayer = new DynamicTileLayer(mContext, this);
+            mLowResLayer = new FixedZoomTileLayer(mContext, this);
+            for (ComposedTileLayer layer : getLayers()) {
+                // throttled here on the timeline of the trace instead
+                layer.setReevaluationInterval(0);
+                layer.setTileSize(tileSize);
+            }
+            mTileMemoryBudget = new TileMemoryBudget(mContext);
+            mTileMemoryBudget.addLayer(mLowResLayer);
+            mTileMemoryBudget.addLayer(mRootLayer);
+            if (mMemoryBudget >= 0) {
+                mTileMemoryBudget.setBudget(mMemoryBudget);
+            }
+            mDisplayPortCalculator = new DisplayPortCalculator(mContext);
+            mDisplayPortCalculator.setTileSize(tileSize.width);
+            if (mDisplayPortStrategy >= 0) {
+                Map<String, Integer> prefs = new HashMap<String, Integer>();
+                prefs.put(DisplayPortCalculator.PREF_DISPLAYPORT_STRATEGY, mDisplayPortStrategy);
+                mDisplayPortCalculator.setStrategy(prefs);
+            }
+        }
+
+        private ComposedTileLayer[] getLayers() {
+            return new ComposedTileLayer[] { mLowResLayer, mRootLayer };
+        }
+
+        @Override
+        public void queueEvent(LOEvent event) {
+            if (event.mType == LOEvent.TILE_REEVALUATION_REQUEST) {
+                mQueuedLayers.add(event.mComposedTileLayer);
+            }
+        }
+
+        void processEvent(long time, DataInputStream input) throws IOException {
+            int type = input.readByte();
+            if (mReevaluationPending && mReevaluationTime + mReevaluationIntervalNanos <= time) {
+                long frameTime = mReevaluationTime + mReevaluationIntervalNanos;
+                advanceWorker(frameTime);
+                reevaluateTiles(frameTime, mPendingViewportMetrics, mPendingDisplayPort);
+            }
+            advanceWorker(time);
+
+            switch (type) {
+                case ViewportRecorder.EVENT_VIEWPORT:
+                    mViewportMetrics = ViewportRecorder.readMetrics(input);
+                    mVelocity = new PointF(input.readFloat(), input.readFloat());
+                    mRedrawHint = input.readBoolean();
+                    geometryChanged(time);
+                    measureFrame(time);
+                    break;
+                case ViewportRecorder.EVENT_ANIMATION_TARGET:
+                    adjustViewport(time, mDisplayPortCalculator.calculate(ViewportRecorder.readMetrics(input), null));
+                    break;
+                case ViewportRecorder.EVENT_FORCE_REDRAW:
+                    mForceRedraw = true;
+                    geometryChanged(time);
+                    break;
+                default:
+                    throw new IOException("Unknown viewport trace event " + type);
+            }
+        }
+
+        /* GeckoLayerClient.geometryChanged */
+        private void geometryChanged(long time) {
+            if (mViewportMetrics == null) {
+                return;
+            }
+            boolean redraw;
+            if (mForceRedraw) {
+                mForceRedraw = false;
+                redraw = true;
+            } else {
+                redraw = mRedrawHint && mDisplayPortCalculator.aboutToCheckerboard(mViewportMetrics, mVelocity, mDisplayPort);
+            }
+            if (redraw) {
+                adjustViewport(time, null);
+            }
+        }
+
+        /* GeckoLayerClient.adjustViewport */
+        private void adjustViewport(long time, DisplayPortMetrics displayPort) {
+            if (mViewportMetrics == null) {
+                return;
+            }
+            if (displayPort == null) {
+                displayPort = mDisplayPortCalculator.calculate(mViewportMetrics, mVelocity);
+            }
+            mDisplayPort = displayPort;
+
+            if (time - mReevaluationTime >= mReevaluationIntervalNanos) {
+                reevaluateTiles(time, mViewportMetrics, displayPort);
+            } else {
+                mReevaluationPending = true;
+                mPendingViewportMetrics = mViewportMetrics;
+                mPendingDisplayPort = displayPort;
+            }
+        }
+
+        private void reevaluateTiles(long time, ImmutableViewportMetrics viewportMetrics, DisplayPortMetrics displayPort) {
+            mReevaluationPending = false;
+            mReevaluationTime = time;
+            for (ComposedTileLayer layer : getLayers()) {
+                layer.reevaluateTiles(viewportMetrics, displayPort);
+            }
+        }
+
+        /**
+         * Run the LOKit thread until the time, a tile is only rendered if it is finished by then.
+         */
+        private void advanceWorker(long time) {
+            while (true) {
+                if (mJobLayer == null && !startJob()) {
+                    mWorkerTime = Math.max(mWorkerTime, time);
+                    return;
+                }
+                if (mJobIndex == mJobTiles.size()) {
+                    finishJob();
+                    continue;
+                }
+                if (mWorkerTime + mTileRenderNanos > time) {
+                    return;
+                }
+                renderNextTile();
+            }
+        }
+
+        /* MainActivity.tileReevaluationRequest */
+        private boolean startJob() {
+            Iterator<ComposedTileLayer> iterator = mQueuedLayers.iterator();
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            mJobLayer = iterator.next();
+            iterator.remove();
+            mJobTiles = new ArrayList<SubTile>();
+            mJobIndex = 0;
+
+            beginDrawing();
+            mJobLayer.addNewTiles(mJobTiles);
+            endDrawing();
+            for (SubTile tile : mJobTiles) {
+                tile.setLastUsedTime(toMillis(mWorkerTime));
+            }
+            mJobLayer.sortByRenderOrder(mJobTiles);
+            mReport.tilesRequested += mJobTiles.size();
+            mFrameTilesRequested += mJobTiles.size();
+            return true;
+        }
+
+        private void renderNextTile() {
+            SubTile tile = mJobTiles.get(mJobIndex++);
+            if (!mJobLayer.isStillValid(tile.id)) {
+                mJobCancelledTiles.add(tile);
+                mReport.tilesCancelled++;
+                return;
+            }
+            CairoImage image = mTileProvider.createTile(tile.id.x, tile.id.y, tile.id.size, tile.id.zoom);
+            mWorkerTime += mTileRenderNanos;
+            mReport.tilesRendered++;
+            mFrameTilesRendered++;
+
+            beginDrawing();
+            tile.setImage(image);
+            endDrawing();
+            mRenderedTiles.add(tile);
+        }
+
+        private void finishJob() {
+            beginDrawing();
+            mJobLayer.removeTiles(mJobCancelledTiles);
+            mJobLayer.markTiles();
+            mJobLayer.clearMarkedTiles();
+            mTileMemoryBudget.enforce(toMillis(mWorkerTime));
+            endDrawing();
+            mJobCancelledTiles.clear();
+            mJobLayer = null;
+            mJobTiles = null;
+
+            Iterator<SubTile> iterator = mRenderedTiles.iterator();
+            while (iterator.hasNext()) {
+                SubTile tile = iterator.next();
+                if (tile.isDestroyed()) {
+                    if (!mSeenTiles.remove(tile)) {
+                        mReport.tilesDiscardedUnseen++;
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+
+        /* The trace is timed in nanoseconds, the tile ages in milliseconds */
+        private long toMillis(long time) {
+            return time / 1000000;
+        }
+
+        private void beginDrawing() {
+            mLowResLayer.beginTransaction();
+            mRootLayer.beginTransaction();
+        }
+
+        private void endDrawing() {
+            mLowResLayer.endTransaction();
+            mRootLayer.endTransaction();
+        }
+
+        /**
+         * Sample which part of the visible page area is covered by tiles with content.
+         */
+        private void measureFrame(long time) {
+            ImmutableViewportMetrics metrics = mViewportMetrics;
+            RectF area = metrics.getViewport();
+            int columns = 0;
+            int rows = 0;
+            if (area.intersect(metrics.getPageRect())) {
+                columns = (int) Math.ceil(area.width() / COVERAGE_CELL_SIZE);
+                rows = (int) Math.ceil(area.height() / COVERAGE_CELL_SIZE);
+            }
+            int cellCount = columns * rows;
+            if (mCells.length < cellCount) {
+                mCells = new byte[cellCount];
+            }
+            Arrays.fill(mCells, 0, cellCount, NOT_COVERED);
+
+            beginDrawing();
+            markCoverage(mLowResLayer, time, area, metrics.zoomFactor, columns, rows, COVERED_LOW_RES);
+            markCoverage(mRootLayer, time, area, metrics.zoomFactor, columns, rows, COVERED);
+            int tileCount = mLowResLayer.tiles.size() + mRootLayer.tiles.size();
+            endDrawing();
+
+            int notCovered = 0;
+            int lowResOnly = 0;
+            for (int i = 0; i < cellCount; i++) {
+                if (mCells[i] == NOT_COVERED) {
+                    notCovered++;
+                } else if (mCells[i] == COVERED_LOW_RES) {
+                    lowResOnly++;
+                }
+            }
+
+            Frame frame = new Frame(time / 1000000f, mFrameTilesRequested, mFrameTilesRendered, tileCount,
+                    cellCount > 0 ? (float) notCovered / cellCount : 0,
+                    cellCount > 0 ? (float) lowResOnly / cellCount : 0);
+            mReport.frames.add(frame);
+            mReport.peakTileCount = Math.max(mReport.peakTileCount, tileCount);
+            mReport.peakBytes = Math.max(mReport.peakBytes, mTileMemoryBudget.getBytesInUse());
+            mFrameTilesRequested = 0;
+            mFrameTilesRendered = 0;
+        }
+
+        private void markCoverage(ComposedTileLayer layer, long time, RectF area, float zoom, int columns, int rows, byte coverage) {
+            for (SubTile tile : layer.tiles) {
+                if (!tile.hasContent()) {
+                    continue;
+                }
+                RectF rect = RectUtils.scale(tile.id.getCSSRectF(), zoom);
+                if (!RectF.intersects(rect, area)) {
+                    continue;
+                }
+                mSeenTiles.add(tile);
+                tile.setLastUsedTime(toMillis(time));
+                // the cells whose centre is inside of the tile
+                int left = Math.max(0, (int) Math.ceil((rect.left - area.left) / COVERAGE_CELL_SIZE - 0.5f));
+                int right = Math.min(columns, (int) Math.ceil((rect.right - area.left) / COVERAGE_CELL_SIZE - 0.5f));
+                int top = Math.max(0, (int) Math.ceil((rect.top - area.top) / COVERAGE_CELL_SIZE - 0.5f));
+                int bottom = Math.min(rows, (int) Math.ceil((rect.bottom - area.top) / COVERAGE_CELL_SIZE - 0.5f));
+                for (int row = top; row < bottom; row++) {
+                    for (int column = left; column < right; column++) {
+                        int cell = row * columns + column;
+                        if (mCells[cell] < coverage) {
+                            mCells[cell] = coverage;
+                        }
+                    }
+                }
+            }
+        }
+
+        Report finish() {
+            for (SubTile tile : mRenderedTiles) {
+                if (!tile.isDestroyed() && !mSeenTiles.contains(tile)) {
+                    mReport.tilesUnseenAtEnd++;
+                }
+            }
+            return mReport;
+        }
+
+        void release() {
+            for (ComposedTileLayer layer : getLayers()) {
+                layer.evictTiles(false);
+                mContext.unregisterComponentCallbacks(layer);
+            }
+        }
+    }
+
+    /**
+     * Statistics of a frame, taken when the viewport of the frame is set.
+     */
+    public static class Frame {
+        public final float timeMillis;
+        /* Tiles requested and rendered since the previous frame */
+        public final int tilesRequested;
+        public final int tilesRendered;
+        /* Tiles of both layers, with and without content */
+        public final int tileCount;
+        /* Fractions of the visible page area without any tile and with only low resolution tiles */
+        public final float checkerboardFraction;
+        public final float lowResFraction;
+
+        Frame(float timeMillis, int tilesRequested, int tilesRendered, int tileCount,
+              float checkerboardFraction, float lowResFraction) {
+            this.timeMillis = timeMillis;
+            this.tilesRequested = tilesRequested;
+            this.tilesRendered = tilesRendered;
+            this.tileCount = tileCount;
+            this.checkerboardFraction = checkerboardFraction;
+            this.lowResFraction = lowResFraction;
+        }
+    }
+
+    public static class Report {
+        public final List<Frame> frames = new ArrayList<Frame>();
+        public int tilesRequested;
+        public int tilesRendered;
+        /* Tiles requested but out of the viewport by the time they would have been rendered */
+        public int tilesCancelled;
+        /* Rendered tiles which were removed or evicted without ever being visible */
+        public int tilesDiscardedUnseen;
+        /* Rendered tiles which were not visible yet at the end of the trace */
+        public int tilesUnseenAtEnd;
+        public int peakTileCount;
+        public long peakBytes;
+
+        public float getMeanCheckerboardFraction() {
+            if (frames.isEmpty()) {
+                return 0;
+            }
+            float sum = 0;
+            for (Frame frame : frames) {
+                sum += frame.checkerboardFraction;
+            }
+            return sum / frames.size();
+        }
+
+        public int getCheckerboardFrameCount() {
+            int count = 0;
+            for (Frame frame : frames) {
+                if (frame.checkerboardFraction > 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Write the frames as CSV, one line per frame.
+         */
+        public void writeCsv(File file) throws IOException {
+            PrintWriter writer = new PrintWriter(new FileWriter(file));
+            try {
+                writer.println("time_ms,tiles_requested,tiles_rendered,tile_count,checkerboard,low_res");
+                for (Frame frame : frames) {
+                    writer.println(frame.timeMillis + "," + frame.tilesRequested + "," + frame.tilesRendered
+                            + "," + frame.tileCount + "," + frame.checkerboardFraction + "," + frame.lowResFraction);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return frames.size() + " frames, " + tilesRequested + " tiles requested, " + tilesRendered
+                    + " rendered, " + tilesCancelled + " cancelled, " + tilesDiscardedUnseen
+                    + " discarded unseen, " + tilesUnseenAtEnd + " unseen at the end, peak "
+                    + peakTileCount + " tiles / " + peakBytes + " bytes, checkerboard in "
+                    + getCheckerboardFrameCount() + " frames, mean " + getMeanCheckerboardFraction();
+        }
+    }
+
+    /**
+     * Renders tiles instantly as images sharing a single buffer, so the memory budget sees the
+     * size of real tiles. The other document operations do nothing.
+     */
+    private static class FakeTileProvider implements TileProvider {
+        private ByteBuffer mBuffer;
+
+        @Override
+        public CairoImage createTile(float x, float y, final IntSize tileSize, float zoom) {
+            int bytes = tileSize.getArea() * 4;
+            if (mBuffer == null || mBuffer.capacity() != bytes) {
+                mBuffer = ByteBuffer.allocate(bytes);
+            }
+            final ByteBuffer buffer = mBuffer;
+            return new CairoImage() {
+                @Override
+                public ByteBuffer getBuffer() {
+                    return buffer;
+                }
+
+                @Override
+                public void destroy() {
+                }
+
+                @Override
+                public IntSize getSize() {
+                    return tileSize;
+                }
+
+                @Override
+                public int getFormat() {
+                    return FORMAT_ARGB32;
+                }
+            };
+        }
+
+        @Override
+        public void rerenderTile(CairoImage image, float x, float y, IntSize tileSize, float zoom) {
+        }
+
+        @Override
+        public CairoImage createTilePart(float x, float y, IntSize tileSize, float zoom, Rect partRect) {
+            return createTile(x, y, new IntSize(partRect.width(), partRect.height()), zoom);
+        }
+
+        @Override
+        public boolean saveDocumentAs(String filePath, String format, boolean takeOwnership) {
+            return false;
+        }
+
+        @Override
+        public boolean saveDocumentAs(String filePath, boolean takeOwnership) {
+            return false;
+        }
+
+        @Override
+        public int getPageWidth() {
+            return 0;
+        }
+
+        @Override
+        public int getPageHeight() {
+            return 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public int getTileSize() {
+            return 0;
+        }
+
+        @Override
+        public void changePart(int partIndex) {
+        }
+
+        @Override
+        public int getCurrentPartNumber() {
+            return 0;
+        }
+
+        @Override
+        public int getPartsCount() {
+            return 1;
+        }
+
+        @Override
+        public Bitmap thumbnail(int size) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isDrawing() {
+            return false;
+        }
+
+        @Override
+        public boolean isTextDocument() {
+            return true;
+        }
+
+        @Override
+        public boolean isSpreadsheet() {
+            return false;
+        }
+
+        @Override
+        public boolean isPresentation() {
+            return false;
+        }
+
+        @Override
+        public void sendKeyEvent(KeyEvent keyEvent) {
+        }
+
+        @Override
+        public void mouseButtonDown(PointF documentCoordinate, int numberOfClicks, float zoomFactor) {
+        }
+
+        @Override
+        public void onSwipeLeft() {
+        }
+
+        @Override
+        public void onSwipeRight() {
+        }
+
+        @Override
+        public void mouseButtonUp(PointF documentCoordinate, int numberOfClicks, float zoomFactor) {
+        }
+
+        @Override
+        public void postUnoCommand(String command, String arguments) {
+        }
+
+        @Override
+        public void postUnoCommand(String command, String arguments, boolean notifyWhenFinished) {
+        }
+
+        @Override
+        public void setTextSelectionStart(PointF documentCoordinate) {
+        }
+
+        @Override
+        public void setTextSelectionEnd(PointF documentCoordinate) {
+        }
+
+        @Override
+        public String getTextSelection(String mimeType) {
+            return null;
+        }
+
+        @Override
+        public boolean paste(String mimeType, String data) {
+            return false;
+        }
+
+        @Override
+        public void setTextSelectionReset(PointF documentCoordinate) {
+        }
+
+        @Override
+        public void setGraphicSelectionStart(PointF documentCoordinate) {
+        }
+
+        @Override
+        public void setGraphicSelectionEnd(PointF documentCoordinate) {
+        }
+
+        @Override
+        public void setDocumentSize(int pageWidth, int pageHeight) {
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.RectF;
+import android.opengl.GLES20;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+
+/**
+ * Packs the tile textures into a few large atlas textures, so a frame binds a handful of textures
+ * and the tiles of a page are drawn with one draw call. There is an atlas for every tile texture
+ * size and format, each a list of pages holding the slots of PAGE_SIZE square, managed by a
+ * TileAtlasAllocator. Each slot has a gutter of SLOT_GUTTER texels filled with the edge pixels of
+ * its tile, so linear filtering at the tile edge doesn't sample the neighbouring slot. The single
+ * pixel textures of solid colour tiles go into small pages of PIXEL_PAGE_SIZE without gutters, so
+ * all of them are drawn with one draw call too.
+ *
+ * Slots are allocated and the pages created and deleted on the GL thread, slots can be freed from
+ * any thread.
+ */
+public class TileTextureAtlas {
+    private static final String LOGTAG = TileTextureAtlas.class.getSimpleName();
+    /* Edge length of the slots of an atlas page without their gutters. */
+    private static final int PAGE_SIZE = 1024;
+    /* Texels around each slot repeating the edge pixels of its tile. */
+    private static final int SLOT_GUTTER = 1;
+    /* Edge length of the pages of the single pixel textures of solid colour tiles. */
+    private static final int PIXEL_PAGE_SIZE = 64;
+    /* Empty pages kept per atlas, so tile churn doesn't create and delete pages. */
+    private static final int KEPT_EMPTY_PAGES = 1;
+
+    private static TileTextureAtlas sSharedInstance;
+
+    private final HashMap<Long, Atlas> mAtlases = new HashMap<Long, Atlas>();
+    private EGLContext mContext;
+    private int mMaxTextureSize = 0;
+    private boolean mReleaseAllEmptyPages = false;
+
+    private TileTextureAtlas() {
+    }
+
+    public static synchronized TileTextureAtlas get() {
+        if (sSharedInstance == null)
+            sSharedInstance = new TileTextureAtlas();
+        return sSharedInstance;
+    }
+
+    /**
+     * Allocate a slot for a texture of the size and cairo format. Returns null if the size doesn't
+     * fit the atlas, then the tile needs a texture of its own. Only on the GL thread.
+     */
+    public synchronized Slot allocate(IntSize size, int cairoFormat) {
+        if (!size.isPositive()) {
+            return null;
+        }
+        long key = getKey(size, cairoFormat);
+        Atlas atlas = mAtlases.get(key);
+        if (atlas == null) {
+            boolean pixel = size.getArea() == 1;
+            int gutter = pixel ? 0 : SLOT_GUTTER;
+            int pageSize = pixel ? PIXEL_PAGE_SIZE : PAGE_SIZE;
+            int maxPageSize = pixel ? PIXEL_PAGE_SIZE : getMaxTextureSize();
+            int columns = Math.min(pageSize / size.width, maxPageSize / (size.width + 2 * gutter));
+            int rows = Math.min(pageSize / size.height, maxPageSize / (size.height + 2 * gutter));
+            if (columns < 2 || rows < 2) {
+                return null;
+            }
+            atlas = new Atlas(size, cairoFormat, columns, rows, gutter);
+            mAtlases.put(key, atlas);
+        }
+        return atlas.allocate();
+    }
+
+    /**
+     * Give the slot back. The content of the slot is overwritten by the next tile using it. Can be
+     * called from any thread.
+     */
+    public synchronized void free(Slot slot) {
+        if (mAtlases.get(getKey(slot.size, slot.mAtlas.mCairoFormat)) != slot.mAtlas) {
+            // the atlas belonged to an old GL context
+            return;
+        }
+        slot.mAtlas.mAllocator.free(slot.mSlot);
+    }
+
+    /**
+     * Delete the empty pages on the next releaseEmptyPages, also the ones kept for reuse.
+     * @return estimated number of bytes which will be released
+     */
+    public synchronized long trim() {
+        mReleaseAllEmptyPages = true;
+        long bytes = 0;
+        for (Atlas atlas : mAtlases.values()) {
+            bytes += (long) atlas.mAllocator.getEmptyPageCount() * atlas.getPageBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Delete the pages which became empty. Only on the GL thread, once per frame.
+     */
+    public synchronized void releaseEmptyPages() {
+        EGL10 egl = (EGL10) EGLContext.getEGL();
+        EGLContext context = egl.eglGetCurrentContext();
+        if (mContext != null && mContext != context) {
+            // the pages belong to the old context
+            mAtlases.clear();
+            mMaxTextureSize = 0;
+        }
+        mContext = context;
+
+        int keep = mReleaseAllEmptyPages ? 0 : KEPT_EMPTY_PAGES;
+        mReleaseAllEmptyPages = false;
+        List<Integer> releasedPages = new ArrayList<Integer>();
+        for (Atlas atlas : mAtlases.values()) {
+            releasedPages.clear();
+            atlas.mAllocator.releaseEmptyPages(keep, releasedPages);
+            for (int page : releasedPages) {
+                int[] textureIds = new int[] { atlas.mPageTextureIds.get(page) };
+                GLES20.glDeleteTextures(1, textureIds, 0);
+                atlas.mPageTextureIds.set(page, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of allocated atlas pages.
+     */
+    public synchronized int getPageCount() {
+        int pages = 0;
+        for (Atlas atlas : mAtlases.values()) {
+            pages += atlas.mAllocator.getPageCount();
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the fraction of the slots of the allocated pages which are free.
+     */
+    public synchronized float getFragmentation() {
+        int slots = 0;
+        int freeSlots = 0;
+        for (Atlas atlas : mAtlases.values()) {
+            slots += atlas.mAllocator.getPageCount() * atlas.mAllocator.getSlotsPerPage();
+            freeSlots += atlas.mAllocator.getFreeSlotCount();
+        }
+        return slots == 0 ? 0 : (float) freeSlots / slots;
+    }
+
+    private int getMaxTextureSize() {
+        if (mMaxTextureSize == 0) {
+            int[] maxTextureSize = new int[1];
+            GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+            mMaxTextureSize = maxTextureSize[0];
+        }
+        return mMaxTextureSize;
+    }
+
+    private static long getKey(IntSize size, int cairoFormat) {
+        return ((long) size.width << 36) | ((long) size.height << 8) | (cairoFormat & 0xff);
+    }
+
+    private static class Atlas {
+        final IntSize mSlotSize;
+        final int mCairoFormat;
+        final int mColumns;
+        final int mGutter;
+        /* Page size in texels, the slots with their gutters. */
+        final int mPageWidth;
+        final int mPageHeight;
+        final TileAtlasAllocator mAllocator;
+        /* GL texture of each page, 0 if the page is not created. */
+        final List<Integer> mPageTextureIds = new ArrayList<Integer>();
+
+        Atlas(IntSize slotSize, int cairoFormat, int columns, int rows, int gutter) {
+            mSlotSize = slotSize;
+            mCairoFormat = cairoFormat;
+            mColumns = columns;
+            mGutter = gutter;
+            mPageWidth = columns * (slotSize.width + 2 * gutter);
+            mPageHeight = rows * (slotSize.height + 2 * gutter);
+            mAllocator = new TileAtlasAllocator(columns * rows);
+        }
+
+        Slot allocate() {
+            int slot = mAllocator.allocate();
+            int page = mAllocator.getPage(slot);
+            while (mPageTextureIds.size() <= page) {
+                mPageTextureIds.add(0);
+            }
+            if (mPageTextureIds.get(page) == 0) {
+                int textureId = createPage();
+                if (textureId == 0) {
+                    mAllocator.free(slot);
+                    return null;
+                }
+                mPageTextureIds.set(page, textureId);
+            }
+            int index = mAllocator.getIndex(slot);
+            int x = (index % mColumns) * (mSlotSize.width + 2 * mGutter) + mGutter;
+            int y = (index / mColumns) * (mSlotSize.height + 2 * mGutter) + mGutter;
+            return new Slot(this, slot, mPageTextureIds.get(page), x, y, mSlotSize);
+        }
+
+        private int createPage() {
+            int[] textureIds = new int[1];
+            GLES20.glGenTextures(1, textureIds, 0);
+            CairoGLInfo glInfo = new CairoGLInfo(mCairoFormat);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[0]);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, glInfo.internalFormat, mPageWidth, mPageHeight, 0,
+                    glInfo.format, glInfo.type, null);
+            int error = GLES20.glGetError();
+            if (error != GLES20.GL_NO_ERROR) {
+                Log.e(LOGTAG, String.format("Failed to create atlas page: %#x", error));
+                GLES20.glDeleteTextures(1, textureIds, 0);
+                return 0;
+            }
+            return textureIds[0];
+        }
+
+        long getPageBytes() {
+            return (long) mPageWidth * mPageHeight * new CairoGLInfo(mCairoFormat).bytesPerPixel;
+        }
+    }
+
+    /**
+     * A slot of an atlas page, the texture content of one tile.
+     */
+    public static class Slot {
+        private final Atlas mAtlas;
+        private final int mSlot;
+        public final int textureId;
+        /* Position of the slot in the page without its gutter, in pixels. */
+        public final int x;
+        public final int y;
+        public final IntSize size;
+
+        Slot(Atlas atlas, int slot, int textureId, int x, int y, IntSize size) {
+            mAtlas = atlas;
+            mSlot = slot;
+            this.textureId = textureId;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        /**
+         * Whether the slot has a gutter, which has to be filled with the edge pixels of the tile.
+         */
+        public boolean hasGutter() {
+            return mAtlas.mGutter > 0;
+        }
+
+        /**
+         * Returns the texture coordinates of the slot in the page. The rect of a single pixel slot
+         * is empty, at the center of the pixel.
+         */
+        public RectF getTextureRect() {
+            float width = mAtlas.mPageWidth;
+            float height = mAtlas.mPageHeight;
+            if (size.getArea() == 1) {
+                return new RectF((x + 0.5f) / width, (y + 0.5f) / height, (x + 0.5f) / width, (y + 0.5f) / height);
+            }
+            return new RectF(x / width, y / height, (x + size.width) / width, (y + size.height) / height);
+        }
+    }
+}
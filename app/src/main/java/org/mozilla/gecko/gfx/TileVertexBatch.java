@@ -0,0 +1,199 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.RectF;
+
+/**
+ * Builds the vertices of all tiles drawn in a frame into one array, so they can be uploaded into a
+ * single vertex buffer and drawn with as few draw calls as possible. Each tile is a quad of two
+ * triangles. The quads are drawn pass by pass in the order of the passes, so the tiles of a lower
+ * pass stay below, and sorted by texture within a pass, so consecutive quads of the same texture
+ * are drawn with one call.
+ *
+ * No GL calls are made here, the vertices use the layout of Layer.fillRectCoordBuffer.
+ */
+public class TileVertexBatch {
+    /* x, y, z, texture_x, texture_y */
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int VERTICES_PER_QUAD = 6;
+    private static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * VERTICES_PER_QUAD;
+
+    /*
+     * Quads as added: pass, texture, the rect relative to the viewport with y pointing up, and the
+     * texture coordinates.
+     */
+    private int mQuadCount;
+    private int[] mPasses = new int[0];
+    private int[] mTextures = new int[0];
+    private float[] mRects = new float[0];
+    private float[] mTextureRects = new float[0];
+    private int[] mOrder = new int[0];
+    private float mViewWidth;
+    private float mViewHeight;
+
+    private float[] mVertices = new float[0];
+    private int mDrawCount;
+    private int[] mDrawTextures = new int[0];
+    private int[] mDrawFirstVertices = new int[0];
+    private int[] mDrawVertexCounts = new int[0];
+
+    /**
+     * Start a new batch for the viewport (in page pixels).
+     */
+    public void reset(RectF viewport) {
+        mQuadCount = 0;
+        mDrawCount = 0;
+        mViewWidth = viewport.width();
+        mViewHeight = viewport.height();
+    }
+
+    /**
+     * Add the quad of a tile with the bounds (in page pixels, as returned by Layer.getBounds) which
+     * shows the textureRect part of the texture, or the whole texture if textureRect is null.
+     */
+    public void addQuad(int pass, int textureId, RectF bounds, RectF viewport, RectF textureRect) {
+        if (mQuadCount == mPasses.length) {
+            int capacity = Math.max(16, mQuadCount * 2);
+            mPasses = copyOf(mPasses, capacity);
+            mTextures = copyOf(mTextures, capacity);
+            mRects = copyOf(mRects, capacity * 4);
+            mTextureRects = copyOf(mTextureRects, capacity * 4);
+            mOrder = new int[capacity];
+        }
+        mPasses[mQuadCount] = pass;
+        mTextures[mQuadCount] = textureId;
+        int offset = mQuadCount * 4;
+        mRects[offset] = bounds.left - viewport.left;
+        mRects[offset + 1] = viewport.bottom - bounds.bottom;
+        mRects[offset + 2] = bounds.right - viewport.left;
+        mRects[offset + 3] = viewport.bottom - bounds.top;
+        mTextureRects[offset] = textureRect != null ? textureRect.left : 0;
+        mTextureRects[offset + 1] = textureRect != null ? textureRect.top : 0;
+        mTextureRects[offset + 2] = textureRect != null ? textureRect.right : 1;
+        mTextureRects[offset + 3] = textureRect != null ? textureRect.bottom : 1;
+        mQuadCount++;
+    }
+
+    /**
+     * Sort the quads and write their vertices and the draw calls.
+     */
+    public void build() {
+        for (int i = 0; i < mQuadCount; i++) {
+            mOrder[i] = i;
+        }
+        // insertion sort, stable and without allocations; the tiles mostly come sorted by pass
+        for (int i = 1; i < mQuadCount; i++) {
+            int quad = mOrder[i];
+            int j = i - 1;
+            while (j >= 0 && compare(mOrder[j], quad) > 0) {
+                mOrder[j + 1] = mOrder[j];
+                j--;
+            }
+            mOrder[j + 1] = quad;
+        }
+
+        if (mVertices.length < mQuadCount * FLOATS_PER_QUAD) {
+            mVertices = new float[mPasses.length * FLOATS_PER_QUAD];
+        }
+        mDrawCount = 0;
+        for (int i = 0; i < mQuadCount; i++) {
+            int quad = mOrder[i];
+            writeQuad(quad, i * FLOATS_PER_QUAD);
+            int texture = mTextures[quad];
+            if (mDrawCount > 0 && mDrawTextures[mDrawCount - 1] == texture) {
+                mDrawVertexCounts[mDrawCount - 1] += VERTICES_PER_QUAD;
+                continue;
+            }
+            if (mDrawCount == mDrawTextures.length) {
+                int capacity = Math.max(16, mDrawCount * 2);
+                mDrawTextures = copyOf(mDrawTextures, capacity);
+                mDrawFirstVertices = copyOf(mDrawFirstVertices, capacity);
+                mDrawVertexCounts = copyOf(mDrawVertexCounts, capacity);
+            }
+            mDrawTextures[mDrawCount] = texture;
+            mDrawFirstVertices[mDrawCount] = i * VERTICES_PER_QUAD;
+            mDrawVertexCounts[mDrawCount] = VERTICES_PER_QUAD;
+            mDrawCount++;
+        }
+    }
+
+    private int compare(int a, int b) {
+        if (mPasses[a] != mPasses[b]) {
+            return mPasses[a] < mPasses[b] ? -1 : 1;
+        }
+        if (mTextures[a] != mTextures[b]) {
+            return mTextures[a] < mTextures[b] ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /* Two triangles of the quad, the texture is flipped vertically as in fillRectCoordBuffer. */
+    private void writeQuad(int quad, int offset) {
+        float left = mRects[quad * 4] / mViewWidth;
+        float bottom = mRects[quad * 4 + 1] / mViewHeight;
+        float right = mRects[quad * 4 + 2] / mViewWidth;
+        float top = mRects[quad * 4 + 3] / mViewHeight;
+        float textureLeft = mTextureRects[quad * 4];
+        float textureTop = mTextureRects[quad * 4 + 1];
+        float textureRight = mTextureRects[quad * 4 + 2];
+        float textureBottom = mTextureRects[quad * 4 + 3];
+
+        offset = writeVertex(offset, left, top, textureLeft, textureBottom);
+        offset = writeVertex(offset, left, bottom, textureLeft, textureTop);
+        offset = writeVertex(offset, right, top, textureRight, textureBottom);
+        offset = writeVertex(offset, right, top, textureRight, textureBottom);
+        offset = writeVertex(offset, left, bottom, textureLeft, textureTop);
+        writeVertex(offset, right, bottom, textureRight, textureTop);
+    }
+
+    private int writeVertex(int offset, float x, float y, float textureX, float textureY) {
+        mVertices[offset] = x;
+        mVertices[offset + 1] = y;
+        mVertices[offset + 2] = 0;
+        mVertices[offset + 3] = textureX;
+        mVertices[offset + 4] = textureY;
+        return offset + FLOATS_PER_VERTEX;
+    }
+
+    public int getQuadCount() {
+        return mQuadCount;
+    }
+
+    /**
+     * Returns the vertices written by build, getVertexCount() * FLOATS_PER_VERTEX floats are valid.
+     */
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    public int getVertexCount() {
+        return mQuadCount * VERTICES_PER_QUAD;
+    }
+
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    public int getDrawTexture(int draw) {
+        return mDrawTextures[draw];
+    }
+
+    public int getDrawFirstVertex(int draw) {
+        return mDrawFirstVertices[draw];
+    }
+
+    public int getDrawVertexCount(int draw) {
+        return mDrawVertexCounts[draw];
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
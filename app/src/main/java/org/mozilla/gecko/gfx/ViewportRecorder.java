@@ -0,0 +1,128 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.PointF;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records the viewport changes the JavaPanZoomController makes through the GeckoLayerClient
+ * during real gestures, so they can be replayed by the TileReplayHarness. The events are kept in
+ * memory while recording and written by save, so no I/O happens on the UI thread while panning.
+ *
+ * Trace format (big endian): MAGIC, VERSION, the tile size, then the events, each starting with
+ * its time in nanoseconds since the start of the recording and its type:
+ *  - EVENT_VIEWPORT: the metrics (13 floats), the velocity (2 floats) and the redraw hint
+ *  - EVENT_ANIMATION_TARGET: the metrics the animation ends with (13 floats)
+ *  - EVENT_FORCE_REDRAW: nothing more
+ */
+public class ViewportRecorder {
+    static final int MAGIC = 0x4c4f5650; // "LOVP"
+    static final int VERSION = 1;
+
+    static final int EVENT_VIEWPORT = 0;
+    static final int EVENT_ANIMATION_TARGET = 1;
+    static final int EVENT_FORCE_REDRAW = 2;
+
+    private final long mStartNanos = System.nanoTime();
+    private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream mOutput = new DataOutputStream(mBytes);
+    private int mEventCount;
+
+    public ViewportRecorder(int tileSize) {
+        try {
+            mOutput.writeInt(MAGIC);
+            mOutput.writeInt(VERSION);
+            mOutput.writeInt(tileSize);
+        } catch (IOException e) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void recordViewport(ImmutableViewportMetrics metrics, PointF velocity, boolean redrawHint) {
+        try {
+            writeEventStart(EVENT_VIEWPORT);
+            writeMetrics(metrics);
+            mOutput.writeFloat(velocity.x);
+            mOutput.writeFloat(velocity.y);
+            mOutput.writeBoolean(redrawHint);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void recordAnimationTarget(ImmutableViewportMetrics metrics) {
+        try {
+            writeEventStart(EVENT_ANIMATION_TARGET);
+            writeMetrics(metrics);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void recordForceRedraw() {
+        try {
+            writeEventStart(EVENT_FORCE_REDRAW);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized int getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * Write the trace recorded so far to the file.
+     */
+    public void save(File file) throws IOException {
+        byte[] trace;
+        synchronized (this) {
+            mOutput.flush();
+            trace = mBytes.toByteArray();
+        }
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            output.write(trace);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeEventStart(int type) throws IOException {
+        mOutput.writeLong(System.nanoTime() - mStartNanos);
+        mOutput.writeByte(type);
+        mEventCount++;
+    }
+
+    private void writeMetrics(ImmutableViewportMetrics metrics) throws IOException {
+        mOutput.writeFloat(metrics.pageRectLeft);
+        mOutput.writeFloat(metrics.pageRectTop);
+        mOutput.writeFloat(metrics.pageRectRight);
+        mOutput.writeFloat(metrics.pageRectBottom);
+        mOutput.writeFloat(metrics.cssPageRectLeft);
+        mOutput.writeFloat(metrics.cssPageRectTop);
+        mOutput.writeFloat(metrics.cssPageRectRight);
+        mOutput.writeFloat(metrics.cssPageRectBottom);
+        mOutput.writeFloat(metrics.viewportRectLeft);
+        mOutput.writeFloat(metrics.viewportRectTop);
+        mOutput.writeFloat(metrics.viewportRectRight);
+        mOutput.writeFloat(metrics.viewportRectBottom);
+        mOutput.writeFloat(metrics.zoomFactor);
+    }
+
+    static ImmutableViewportMetrics readMetrics(DataInput input) throws IOException {
+        return new ImmutableViewportMetrics(
+                input.readFloat(), input.readFloat(), input.readFloat(), input.readFloat(),
+                input.readFloat(), input.readFloat(), input.readFloat(), input.readFloat(),
+                input.readFloat(), input.readFloat(), input.readFloat(), input.readFloat(),
+                input.readFloat());
+    }
+}
@@ -0,0 +1,117 @@
+package org.libreoffice.manager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares PayloadParser with the regex and split based parsing InvalidationHandler used before,
+ * on payloads recorded from a Writer and a Calc document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadParserBenchmark {
+    private static final String[] RECTANGLES = {
+            "0, 0, 12240, 15840",
+            "1418, 1418, 0, 276",
+            "1418, 2963, 9412, 551",
+            "EMPTY",
+    };
+    private static final String CELL_CURSOR = "1280, 256, 1279, 255, 1, 1";
+    private static final String SELECTION = "1418, 1418, 9412, 276; 1418, 1694, 9412, 276; 1418, 1970, 9412, 276; "
+            + "1418, 2246, 9412, 276; 1418, 2522, 9412, 276; 1418, 2798, 6120, 276";
+    private static final String[] STATES = {
+            ".uno:Bold=true",
+            ".uno:CharFontName=Liberation Serif",
+            ".uno:Color=-1",
+            ".uno:StatePageNumber=Page 2 of 15",
+    };
+
+    private final PayloadParser mParser = new PayloadParser();
+
+    @Benchmark
+    public void legacyRectangle(Blackhole blackhole) {
+        for (String payload : RECTANGLES) {
+            blackhole.consume(legacyParseNumbers(payload, 4));
+        }
+    }
+
+    @Benchmark
+    public void parserRectangle(Blackhole blackhole) {
+        for (String payload : RECTANGLES) {
+            if (mParser.parseNumbers(payload) == 4) {
+                blackhole.consume(mParser.getNumber(0) + mParser.getNumber(3));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyCellCursor(Blackhole blackhole) {
+        blackhole.consume(legacyParseNumbers(CELL_CURSOR, 6));
+    }
+
+    @Benchmark
+    public void parserCellCursor(Blackhole blackhole) {
+        if (mParser.parseNumbers(CELL_CURSOR) == 6) {
+            blackhole.consume(mParser.getNumber(0) + mParser.getNumber(3));
+        }
+    }
+
+    @Benchmark
+    public void legacyRectangles(Blackhole blackhole) {
+        for (String coordinates : SELECTION.split(";")) {
+            blackhole.consume(legacyParseNumbers(coordinates, 4));
+        }
+    }
+
+    @Benchmark
+    public void parserRectangles(Blackhole blackhole) {
+        int count = mParser.parseRectangles(SELECTION);
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(mParser.getRectangleX(i) + mParser.getRectangleHeight(i));
+        }
+    }
+
+    @Benchmark
+    public void legacyState(Blackhole blackhole) {
+        for (String payload : STATES) {
+            String[] parts = payload.split("=");
+            blackhole.consume(Boolean.parseBoolean(parts[1]));
+            blackhole.consume(parts[0].equals(".uno:StatePageNumber"));
+        }
+    }
+
+    @Benchmark
+    public void parserState(Blackhole blackhole) {
+        for (String payload : STATES) {
+            if (mParser.parseKeyValue(payload)) {
+                blackhole.consume(mParser.isValueTrue());
+                blackhole.consume(mParser.keyEquals(".uno:StatePageNumber"));
+            }
+        }
+    }
+
+    /* The parsing of InvalidationHandler.convertPayloadToRectangle before PayloadParser. */
+    private static int[] legacyParseNumbers(String payload, int count) {
+        String payloadWithoutWhitespace = payload.replaceAll("\\s", "");
+        if (payloadWithoutWhitespace.isEmpty() || payloadWithoutWhitespace.equals("EMPTY")) {
+            return null;
+        }
+        String[] coordinates = payloadWithoutWhitespace.split(",");
+        if (coordinates.length != count) {
+            return null;
+        }
+        return new int[] {
+                Integer.decode(coordinates[0]),
+                Integer.decode(coordinates[1]),
+                Integer.decode(coordinates[2]),
+                Integer.decode(coordinates[3]),
+        };
+    }
+}
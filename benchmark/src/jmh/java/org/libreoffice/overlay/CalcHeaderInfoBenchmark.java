@@ -0,0 +1,41 @@
+package org.libreoffice.overlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the row and column headers, sent for every scroll of a spreadsheet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CalcHeaderInfoBenchmark {
+    private String mHeaders;
+
+    @Setup
+    public void setUp() {
+        // a phone screen of a spreadsheet: 50 rows and 20 columns
+        StringBuilder headers = new StringBuilder("{ \"rows\": [");
+        for (int row = 0; row < 50; row++) {
+            headers.append(row == 0 ? "" : ", ")
+                    .append("{ \"text\": \"").append(row + 1).append("\", \"size\": \"").append((row + 1) * 256).append("\" }");
+        }
+        headers.append("], \"columns\": [");
+        for (int column = 0; column < 20; column++) {
+            headers.append(column == 0 ? "" : ", ")
+                    .append("{ \"text\": \"").append((char) ('A' + column)).append("\", \"size\": \"").append((column + 1) * 1280).append("\" }");
+        }
+        mHeaders = headers.append("] }").toString();
+    }
+
+    @Benchmark
+    public CalcHeaderInfo parse() {
+        return CalcHeaderInfo.parse(mHeaders);
+    }
+}
@@ -0,0 +1,65 @@
+package org.mozilla.gecko.gfx;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The display port calculation of each strategy, done for every viewport change while panning.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DisplayPortCalculatorBenchmark {
+    /* the gfx.displayport.strategy values: fixed margin, velocity bias, dynamic resolution, no margin, prediction bias */
+    @Param({"0", "1", "2", "3", "4"})
+    public int strategy;
+
+    private DisplayPortCalculator mCalculator;
+    private ImmutableViewportMetrics mMetrics;
+    private DisplayPortMetrics mDisplayPort;
+    private final PointF mVelocity = new PointF(0, 40);
+    private float mOffset;
+
+    @Setup
+    public void setUp() {
+        mCalculator = new DisplayPortCalculator(new Context() { });
+        Map<String, Integer> prefs = new HashMap<String, Integer>();
+        prefs.put("gfx.displayport.strategy", strategy);
+        mCalculator.setStrategy(prefs);
+
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        displayMetrics.widthPixels = 1080;
+        displayMetrics.heightPixels = 1920;
+        RectF cssPageRect = new RectF(0, 0, 794, 1123 * 20);
+        float zoom = 1080f / 794;
+        mMetrics = new ImmutableViewportMetrics(displayMetrics)
+                .setPageRect(RectUtils.scale(cssPageRect, zoom), cssPageRect)
+                .setZoomFactor(zoom);
+        mDisplayPort = mCalculator.calculate(mMetrics, mVelocity);
+    }
+
+    @Benchmark
+    public DisplayPortMetrics calculate() {
+        mOffset = (mOffset + 40) % 20000;
+        return mCalculator.calculate(mMetrics.setViewportOrigin(0, mOffset), mVelocity);
+    }
+
+    @Benchmark
+    public boolean aboutToCheckerboard() {
+        mOffset = (mOffset + 40) % 20000;
+        return mCalculator.aboutToCheckerboard(mMetrics.setViewportOrigin(0, mOffset), mVelocity, mDisplayPort);
+    }
+}
@@ -0,0 +1,76 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.RectF;
+import org.libreoffice.data.TileIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tile bookkeeping of ComposedTileLayer: lookups and the rect queries of each tile
+ * reevaluation, with the tiles of the current and of an old zoom level in the grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TileGridBenchmark {
+    private static final IntSize TILE_SIZE = new IntSize(256, 256);
+    private static final float ZOOM = 1.4142135f;
+    private static final float OLD_ZOOM = 1;
+
+    /* rows of 5 tiles of each zoom level */
+    @Param({"20", "200"})
+    public int rows;
+
+    private TileGrid mGrid;
+    private final RectF mDisplayPort = new RectF(0, 0, 1280, 2560);
+    private final List<SubTile> mOutput = new ArrayList<SubTile>();
+    private int mRow;
+
+    @Setup
+    public void setUp() {
+        mGrid = new TileGrid(TILE_SIZE);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < 5; column++) {
+                mGrid.put(new SubTile(new TileIdentifier(column * 256, row * 256, ZOOM, TILE_SIZE)));
+                mGrid.put(new SubTile(new TileIdentifier(column * 256, row * 256, OLD_ZOOM, TILE_SIZE)));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        mRow = (mRow + 1) % rows;
+        return mGrid.contains(512, mRow * 256, ZOOM);
+    }
+
+    @Benchmark
+    public void collectIntersecting(Blackhole blackhole) {
+        mOutput.clear();
+        mGrid.collectIntersecting(mDisplayPort, ZOOM, mOutput);
+        blackhole.consume(mOutput.size());
+    }
+
+    @Benchmark
+    public void collectOutside(Blackhole blackhole) {
+        mOutput.clear();
+        mGrid.collectOutside(mDisplayPort, ZOOM, mOutput);
+        blackhole.consume(mOutput.size());
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (SubTile tile : mGrid) {
+            blackhole.consume(tile);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.mozilla.gecko.gfx;
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import org.libreoffice.data.TileIdentifier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tiles needed to cover the screen and the display port of representative screens and
+ * documents at 256 and 512 pixel tiles, see LOKitTileProvider.chooseTileSize. The number of
+ * paintTile calls of each configuration is reported by the PaintCalls counters. The time is only
+ * that of the Java side of rendering them: the tile bookkeeping and writing every pixel of each
+ * tile buffer, as paintTile does. Render time is not measured here, the LOKit rendering is only
+ * measured on a device, by the tile.paint_time_us metric.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileSizeBenchmark {
+    @Param({"256", "512"})
+    public int tileSize;
+
+    /* xhdpi phone, xxhdpi phone, xhdpi tablet */
+    @Param({"720x1280", "1080x2400", "1600x2560"})
+    public String screen;
+
+    /* 20 A4 pages at page width zoom, a wide spreadsheet at zoom 1 */
+    @Param({"text", "spreadsheet"})
+    public String document;
+
+    /**
+     * The paintTile calls of the configuration, reported next to the time of each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PaintCalls {
+        public int paintCallsPerScreen;
+        public int paintCallsPerDisplayPort;
+        public double displayPortMegapixels;
+    }
+
+    private final List<RectF> mTiles = new ArrayList<RectF>();
+    private int mScreenTiles;
+    private IntSize mTileSize;
+    private TileGrid mGrid;
+    private IntBuffer mTileBuffer;
+    private int[] mRow;
+    private float mZoom;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = screen.split("x");
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        displayMetrics.widthPixels = Integer.parseInt(size[0]);
+        displayMetrics.heightPixels = Integer.parseInt(size[1]);
+
+        RectF cssPageRect;
+        if (document.equals("text")) {
+            cssPageRect = new RectF(0, 0, 794, 1123 * 20);
+            mZoom = displayMetrics.widthPixels / 794f;
+        } else {
+            cssPageRect = new RectF(0, 0, 6400, 40000);
+            mZoom = 1;
+        }
+        ImmutableViewportMetrics metrics = new ImmutableViewportMetrics(displayMetrics)
+                .setPageRect(RectUtils.scale(cssPageRect, mZoom), cssPageRect)
+                .setZoomFactor(mZoom)
+                .setViewportOrigin(0, displayMetrics.heightPixels * 2);
+
+        DisplayPortCalculator displayPortCalculator = new DisplayPortCalculator(new Context() { });
+        displayPortCalculator.setTileSize(tileSize);
+        DisplayPortMetrics displayPort = displayPortCalculator.calculate(metrics, null);
+        RectF pageRect = metrics.getPageRect();
+        mScreenTiles = collectTiles(metrics.getViewport(), pageRect, mTiles);
+        mTiles.clear();
+        collectTiles(displayPort.getPosition(), pageRect, mTiles);
+
+        mTileSize = new IntSize(tileSize, tileSize);
+        mGrid = new TileGrid(mTileSize);
+        mTileBuffer = ByteBuffer.allocateDirect(tileSize * tileSize * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mRow = new int[tileSize];
+    }
+
+    /**
+     * The tiles of the rect, aligned like ComposedTileLayer.roundToTileSize and skipping the ones
+     * outside of the page like ComposedTileLayer.addNewTiles.
+     */
+    private int collectTiles(RectF rect, RectF pageRect, List<RectF> output) {
+        float left = (float) Math.floor(rect.left / tileSize) * tileSize;
+        float top = (float) Math.floor(rect.top / tileSize) * tileSize;
+        for (float y = top; y < rect.bottom && y <= pageRect.height(); y += tileSize) {
+            for (float x = left; x < rect.right && x <= pageRect.width(); x += tileSize) {
+                output.add(new RectF(x, y, x + tileSize, y + tileSize));
+            }
+        }
+        return output.size();
+    }
+
+    @Benchmark
+    public TileGrid renderDisplayPort(PaintCalls paintCalls) {
+        paintCalls.paintCallsPerScreen = mScreenTiles;
+        paintCalls.paintCallsPerDisplayPort = mTiles.size();
+        paintCalls.displayPortMegapixels = mTiles.size() * (double) tileSize * tileSize / 1e6;
+        mGrid.clear();
+        for (int i = 0; i < mTiles.size(); i++) {
+            RectF rect = mTiles.get(i);
+            mGrid.put(new SubTile(new TileIdentifier((int) rect.left, (int) rect.top, mZoom, mTileSize)));
+            mTileBuffer.clear();
+            for (int y = 0; y < tileSize; y++) {
+                mRow[0] = i + y;
+                mTileBuffer.put(mRow);
+            }
+        }
+        return mGrid;
+    }
+}
@@ -0,0 +1,78 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.RectF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per frame work of drawing the tiles: building the vertex batch of a screen of atlas tiles,
+ * and the slot churn of the texture atlas while scrolling.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TileVertexBatchBenchmark {
+    private static final int TILE_SIZE = 256;
+    private static final int SLOTS_PER_PAGE = 16;
+
+    private final TileVertexBatch mBatch = new TileVertexBatch();
+    private final RectF mViewport = new RectF(100, 300, 1180, 2220);
+    private RectF[] mBounds;
+    private int[] mTextures;
+    private RectF[] mTextureRects;
+    private TileAtlasAllocator mAllocator;
+    private int[] mSlots;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        // a screen of tiles with a row prefetched above and below, on three atlas pages
+        int columns = 5;
+        int rows = 11;
+        mBounds = new RectF[columns * rows];
+        mTextures = new int[columns * rows];
+        mTextureRects = new RectF[columns * rows];
+        for (int i = 0; i < mBounds.length; i++) {
+            int x = (i % columns) * TILE_SIZE;
+            int y = (i / columns) * TILE_SIZE;
+            mBounds[i] = new RectF(x, y, x + TILE_SIZE, y + TILE_SIZE);
+            mTextures[i] = 1 + i % 3;
+            int slot = i % SLOTS_PER_PAGE;
+            mTextureRects[i] = new RectF((slot % 4) / 4f, (slot / 4) / 4f, (slot % 4 + 1) / 4f, (slot / 4 + 1) / 4f);
+        }
+
+        mAllocator = new TileAtlasAllocator(SLOTS_PER_PAGE);
+        mSlots = new int[mBounds.length];
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = mAllocator.allocate();
+        }
+    }
+
+    @Benchmark
+    public TileVertexBatch buildBatch() {
+        mBatch.reset(mViewport);
+        for (int i = 0; i < mBounds.length; i++) {
+            mBatch.addQuad(2, mTextures[i], mBounds[i], mViewport, mTextureRects[i]);
+        }
+        mBatch.build();
+        return mBatch;
+    }
+
+    @Benchmark
+    public int atlasChurn() {
+        // a row of tiles scrolls out and another one in
+        for (int i = 0; i < 5; i++) {
+            int index = (mNext + i) % mSlots.length;
+            mAllocator.free(mSlots[index]);
+            mSlots[index] = mAllocator.allocate();
+        }
+        mNext = (mNext + 5) % mSlots.length;
+        return mAllocator.getPageCount();
+    }
+}
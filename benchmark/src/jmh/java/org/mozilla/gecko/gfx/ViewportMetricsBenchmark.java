@@ -0,0 +1,67 @@
+package org.mozilla.gecko.gfx;
+
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The viewport math done for every frame of a pan or zoom: ImmutableViewportMetrics updates and
+ * the RectUtils conversions between CSS and scaled rects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ViewportMetricsBenchmark {
+    private ImmutableViewportMetrics mMetrics;
+    private ImmutableViewportMetrics mZoomedMetrics;
+    private final PointF mFocus = new PointF(540, 960);
+    private float mOffset;
+
+    @Setup
+    public void setUp() {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        displayMetrics.widthPixels = 1080;
+        displayMetrics.heightPixels = 1920;
+        // an A4 page at 96 dpi
+        RectF cssPageRect = new RectF(0, 0, 794, 1123 * 20);
+        float zoom = 1080f / 794;
+        mMetrics = new ImmutableViewportMetrics(displayMetrics)
+                .setPageRect(RectUtils.scale(cssPageRect, zoom), cssPageRect)
+                .setZoomFactor(zoom);
+        mZoomedMetrics = mMetrics.scaleTo(zoom * 2, mFocus);
+    }
+
+    @Benchmark
+    public ImmutableViewportMetrics scroll() {
+        mOffset = (mOffset + 17) % 10000;
+        return mMetrics.setViewportOrigin(0, mOffset).clamp();
+    }
+
+    @Benchmark
+    public ImmutableViewportMetrics pinch() {
+        return mMetrics.scaleTo(mMetrics.zoomFactor * 1.5f, mFocus).clamp();
+    }
+
+    @Benchmark
+    public ImmutableViewportMetrics interpolate() {
+        return mMetrics.interpolate(mZoomedMetrics, 0.5f);
+    }
+
+    @Benchmark
+    public void viewportRects(Blackhole blackhole) {
+        RectF viewport = mMetrics.getViewport();
+        RectF cssViewport = mMetrics.getCssViewport();
+        blackhole.consume(RectUtils.round(RectUtils.scale(cssViewport, mMetrics.zoomFactor)));
+        blackhole.consume(RectUtils.roundIn(RectUtils.expand(viewport, 256, 256)));
+        blackhole.consume(RectUtils.fuzzyEquals(viewport, mZoomedMetrics.getViewport()));
+    }
+}
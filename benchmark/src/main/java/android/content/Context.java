@@ -0,0 +1,7 @@
+package android.content;
+
+/**
+ * JVM stand-in for android.content.Context, which the display port strategies only pass along.
+ */
+public abstract class Context {
+}
@@ -0,0 +1,69 @@
+package android.graphics;
+
+/**
+ * JVM implementation of the part of android.graphics.PointF used by the rendering core, so the
+ * benchmarks run on a plain JDK.
+ */
+public class PointF {
+    public float x;
+    public float y;
+
+    public PointF() {
+    }
+
+    public PointF(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public PointF(Point p) {
+        this.x = p.x;
+        this.y = p.y;
+    }
+
+    public final void set(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public final void set(PointF p) {
+        this.x = p.x;
+        this.y = p.y;
+    }
+
+    public final void offset(float dx, float dy) {
+        x += dx;
+        y += dy;
+    }
+
+    public final boolean equals(float x, float y) {
+        return this.x == x && this.y == y;
+    }
+
+    public final float length() {
+        return length(x, y);
+    }
+
+    public static float length(float x, float y) {
+        return (float) Math.hypot(x, y);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PointF)) {
+            return false;
+        }
+        PointF p = (PointF) o;
+        return x == p.x && y == p.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Float.floatToIntBits(x) + Float.floatToIntBits(y);
+    }
+
+    @Override
+    public String toString() {
+        return "PointF(" + x + ", " + y + ")";
+    }
+}
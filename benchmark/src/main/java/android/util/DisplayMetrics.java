@@ -0,0 +1,9 @@
+package android.util;
+
+/**
+ * JVM stand-in for android.util.DisplayMetrics, only the screen size.
+ */
+public class DisplayMetrics {
+    public int widthPixels;
+    public int heightPixels;
+}
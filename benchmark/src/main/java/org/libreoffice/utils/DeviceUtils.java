@@ -0,0 +1,14 @@
+package org.libreoffice.utils;
+
+/**
+ * JVM stand-in for the device queries of the app, with the values of a typical xhdpi phone.
+ */
+public class DeviceUtils {
+    public static float getDpi() {
+        return 320;
+    }
+
+    public static boolean isLowRamDevice() {
+        return false;
+    }
+}
@@ -0,0 +1,14 @@
+package org.mozilla.gecko.gfx;
+
+import org.libreoffice.data.TileIdentifier;
+
+/**
+ * JVM stand-in for the GL tile of the app, TileGrid only indexes the tiles by their identifier.
+ */
+public class SubTile {
+    public final TileIdentifier id;
+
+    public SubTile(TileIdentifier id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,58 @@
+package org.libreoffice.kit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class DirectBufferAllocatorTest {
+    private static final int SIZE = 256 * 256 * 4;
+
+    @Test
+    public void reusesFreedBuffers() {
+        long bytesInUse = DirectBufferAllocator.getBytesInUse();
+        ByteBuffer buffer = DirectBufferAllocator.allocate(SIZE - 100);
+        assertEquals(SIZE - 100, buffer.limit());
+        assertEquals(bytesInUse + SIZE, DirectBufferAllocator.getBytesInUse());
+
+        DirectBufferAllocator.free(buffer);
+        assertEquals(bytesInUse, DirectBufferAllocator.getBytesInUse());
+        ByteBuffer reused = DirectBufferAllocator.allocate(SIZE);
+        assertSame(buffer, reused);
+        assertEquals(SIZE, reused.limit());
+        DirectBufferAllocator.free(reused);
+    }
+
+    @Test
+    public void ignoresDoubleFrees() {
+        long bytesInUse = DirectBufferAllocator.getBytesInUse();
+        ByteBuffer buffer = DirectBufferAllocator.allocate(SIZE);
+        DirectBufferAllocator.free(buffer);
+        DirectBufferAllocator.free(buffer);
+        assertEquals(bytesInUse, DirectBufferAllocator.getBytesInUse());
+
+        // the buffer is pooled once, so two tiles never share it
+        ByteBuffer first = DirectBufferAllocator.allocate(SIZE);
+        ByteBuffer second = DirectBufferAllocator.allocate(SIZE);
+        assertNotSame(first, second);
+        assertEquals(bytesInUse + 2 * SIZE, DirectBufferAllocator.getBytesInUse());
+        DirectBufferAllocator.free(first);
+        DirectBufferAllocator.free(second);
+    }
+
+    @Test
+    public void ignoresBuffersItDidNotAllocate() {
+        DirectBufferAllocator.trimPool(0);
+        long bytesInUse = DirectBufferAllocator.getBytesInUse();
+        ByteBuffer foreign = ByteBuffer.allocateDirect(SIZE);
+        DirectBufferAllocator.free(foreign);
+        assertEquals(bytesInUse, DirectBufferAllocator.getBytesInUse());
+        assertEquals(0, DirectBufferAllocator.getPooledBytes());
+
+        ByteBuffer buffer = DirectBufferAllocator.allocate(SIZE);
+        assertNotSame(foreign, buffer);
+        DirectBufferAllocator.free(buffer);
+    }
+}
@@ -0,0 +1,72 @@
+package org.mozilla.gecko.gfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    private static final long MAX_VALUE = (1L << 32) - 1;
+
+    @Test
+    public void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 32; value++) {
+            assertEquals(value, LatencyHistogram.getBucketIndex(value));
+            assertEquals(value, LatencyHistogram.getBucketLowerBound(value));
+            assertEquals(value, LatencyHistogram.getBucketUpperBound(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        assertEquals(0, LatencyHistogram.getBucketLowerBound(0));
+        for (int i = 1; i < LatencyHistogram.getBucketCount(); i++) {
+            assertEquals(LatencyHistogram.getBucketUpperBound(i - 1) + 1, LatencyHistogram.getBucketLowerBound(i));
+        }
+        assertEquals(MAX_VALUE, LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucketCount() - 1));
+    }
+
+    @Test
+    public void boundsMapToTheirBucket() {
+        for (int i = 0; i < LatencyHistogram.getBucketCount(); i++) {
+            assertEquals(i, LatencyHistogram.getBucketIndex(LatencyHistogram.getBucketLowerBound(i)));
+            assertEquals(i, LatencyHistogram.getBucketIndex(LatencyHistogram.getBucketUpperBound(i)));
+        }
+    }
+
+    @Test
+    public void bucketsAreWithinThreePercent() {
+        for (int i = 32; i < LatencyHistogram.getBucketCount(); i++) {
+            long lower = LatencyHistogram.getBucketLowerBound(i);
+            long width = LatencyHistogram.getBucketUpperBound(i) - lower + 1;
+            assertTrue("bucket " + i, width <= lower / 32);
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartABucket() {
+        for (int bit = 5; bit < 32; bit++) {
+            long value = 1L << bit;
+            int index = LatencyHistogram.getBucketIndex(value);
+            assertEquals(value, LatencyHistogram.getBucketLowerBound(index));
+            assertEquals(index - 1, LatencyHistogram.getBucketIndex(value - 1));
+        }
+    }
+
+    @Test
+    public void percentilesAndClamping() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value * 1000);
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(102, histogram.getCount());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue("median " + median, median >= 50000 && median <= 50000 * 33 / 32);
+        assertEquals(MAX_VALUE, histogram.getMax());
+        assertEquals(1, histogram.getCountInBucket(0));
+    }
+}
@@ -0,0 +1,150 @@
+package org.mozilla.gecko.gfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TileAtlasAllocatorTest {
+    @Test
+    public void allocatesLowestIndexOfLowestPageFirst() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, allocator.allocate());
+        }
+        assertEquals(1, allocator.getPageCount());
+        assertEquals(allocator.getSlot(1, 0), allocator.allocate());
+        assertEquals(2, allocator.getPageCount());
+
+        allocator.free(allocator.getSlot(0, 2));
+        // the free slot of the first page is used before the second page
+        assertEquals(allocator.getSlot(0, 2), allocator.allocate());
+    }
+
+    @Test
+    public void allocatedSlotsAreUnique() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(8);
+        Set<Integer> slots = new HashSet<Integer>();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(slots.add(allocator.allocate()));
+        }
+        assertEquals(3, allocator.getPageCount());
+        assertEquals(20, allocator.getUsedSlotCount());
+        assertEquals(4, allocator.getFreeSlotCount());
+    }
+
+    @Test
+    public void freeRejectsSlotsWhichAreNotAllocated() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(4);
+        int first = allocator.allocate();
+        int second = allocator.allocate();
+        allocator.free(first);
+
+        // a double free on a partly used page
+        assertFreeFails(allocator, first);
+        // never allocated slot of an allocated page, and slots of pages which don't exist
+        assertFreeFails(allocator, allocator.getSlot(0, 3));
+        assertFreeFails(allocator, allocator.getSlot(5, 0));
+        assertFreeFails(allocator, -1);
+
+        assertEquals(1, allocator.getUsedSlotCount());
+        assertTrue(allocator.isSlotAllocated(second));
+        assertFalse(allocator.isSlotAllocated(first));
+        // the rejected frees didn't corrupt the free slots
+        assertEquals(first, allocator.allocate());
+        assertEquals(allocator.getSlot(0, 2), allocator.allocate());
+        assertEquals(allocator.getSlot(0, 3), allocator.allocate());
+        assertEquals(allocator.getSlot(1, 0), allocator.allocate());
+    }
+
+    @Test
+    public void releaseEmptyPagesKeepsTheGivenNumber() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(2);
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int i = 0; i < 8; i++) {
+            slots.add(allocator.allocate());
+        }
+        // empty pages 1, 2 and 3, page 0 stays half used
+        for (int i = 1; i < 8; i++) {
+            allocator.free(slots.get(i));
+        }
+        assertEquals(3, allocator.getEmptyPageCount());
+
+        List<Integer> released = new ArrayList<Integer>();
+        allocator.releaseEmptyPages(1, released);
+        assertEquals(2, released.size());
+        assertEquals(Integer.valueOf(2), released.get(0));
+        assertEquals(Integer.valueOf(3), released.get(1));
+        assertEquals(2, allocator.getPageCount());
+        assertEquals(1, allocator.getEmptyPageCount());
+        assertTrue(allocator.isPageAllocated(1));
+        assertFalse(allocator.isPageAllocated(2));
+        assertFreeFails(allocator, allocator.getSlot(2, 0));
+
+        released.clear();
+        allocator.releaseEmptyPages(0, released);
+        assertEquals(1, released.size());
+        assertEquals(1, allocator.getPageCount());
+    }
+
+    @Test
+    public void releasedPagesAreReused() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(1);
+        int first = allocator.allocate();
+        int second = allocator.allocate();
+        int third = allocator.allocate();
+        allocator.free(second);
+        allocator.releaseEmptyPages(0, new ArrayList<Integer>());
+        assertFalse(allocator.isPageAllocated(allocator.getPage(second)));
+
+        // the lowest released page index is allocated again
+        assertEquals(second, allocator.allocate());
+        assertTrue(allocator.isPageAllocated(allocator.getPage(second)));
+        assertEquals(allocator.getSlot(3, 0), allocator.allocate());
+        assertTrue(allocator.isSlotAllocated(first));
+        assertTrue(allocator.isSlotAllocated(third));
+    }
+
+    @Test
+    public void fragmentation() {
+        TileAtlasAllocator allocator = new TileAtlasAllocator(4);
+        assertEquals(0, allocator.getFragmentation(), 0);
+        assertEquals(0, allocator.getExcessPageCount());
+
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int i = 0; i < 8; i++) {
+            slots.add(allocator.allocate());
+        }
+        assertEquals(0, allocator.getFragmentation(), 0);
+
+        // one slot used in each of the two pages, which would fit into one
+        for (int i = 0; i < 8; i++) {
+            if (i != 0 && i != 4) {
+                allocator.free(slots.get(i));
+            }
+        }
+        assertEquals(0.75f, allocator.getFragmentation(), 0.0001f);
+        assertEquals(1, allocator.getExcessPageCount());
+        assertEquals(0, allocator.getEmptyPageCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPagesWithoutSlots() {
+        new TileAtlasAllocator(0);
+    }
+
+    private static void assertFreeFails(TileAtlasAllocator allocator, int slot) {
+        try {
+            allocator.free(slot);
+            fail("Freed slot " + slot + " which is not allocated");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.mozilla.gecko.gfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.RectF;
+import org.junit.Test;
+
+public class TileVertexBatchTest {
+    private static final RectF VIEWPORT = new RectF(100, 200, 500, 1000);
+
+    private final TileVertexBatch mBatch = new TileVertexBatch();
+
+    @Test
+    public void sortsByPassThenTexture() {
+        mBatch.reset(VIEWPORT);
+        addQuad(1, 2, 0);
+        addQuad(0, 3, 1);
+        addQuad(1, 1, 2);
+        addQuad(0, 3, 3);
+        addQuad(0, 1, 4);
+        mBatch.build();
+
+        assertEquals(5, mBatch.getQuadCount());
+        assertEquals(30, mBatch.getVertexCount());
+        // quads of the same pass and texture keep the order they were added in
+        int[] expectedColumns = { 4, 1, 3, 2, 0 };
+        for (int i = 0; i < expectedColumns.length; i++) {
+            assertEquals(expectedColumns[i] * 0.25f, getQuadLeft(i), 0.0001f);
+        }
+    }
+
+    @Test
+    public void coalescesRunsIntoDrawCalls() {
+        mBatch.reset(VIEWPORT);
+        addQuad(1, 2, 0);
+        addQuad(0, 3, 1);
+        addQuad(1, 1, 2);
+        addQuad(0, 3, 3);
+        addQuad(0, 1, 4);
+        addQuad(1, 2, 5);
+        mBatch.build();
+
+        // one draw per pass and texture; texture 1 is drawn twice as the passes must stay in order
+        assertEquals(4, mBatch.getDrawCount());
+        assertDraw(0, 1, 0, 6);
+        assertDraw(1, 3, 6, 12);
+        assertDraw(2, 1, 18, 6);
+        assertDraw(3, 2, 24, 12);
+    }
+
+    @Test
+    public void growsAndResets() {
+        mBatch.reset(VIEWPORT);
+        for (int i = 0; i < 40; i++) {
+            addQuad(0, 1 + i % 2, i % 4);
+        }
+        mBatch.build();
+        assertEquals(40, mBatch.getQuadCount());
+        assertEquals(2, mBatch.getDrawCount());
+        assertDraw(0, 1, 0, 120);
+        assertDraw(1, 2, 120, 120);
+
+        mBatch.reset(VIEWPORT);
+        addQuad(2, 7, 0);
+        mBatch.build();
+        assertEquals(1, mBatch.getQuadCount());
+        assertEquals(1, mBatch.getDrawCount());
+        assertDraw(0, 7, 0, 6);
+    }
+
+    @Test
+    public void writesTwoTrianglesWithFlippedTexture() {
+        mBatch.reset(VIEWPORT);
+        mBatch.addQuad(0, 1, new RectF(100, 200, 300, 600), VIEWPORT, new RectF(0.25f, 0, 0.5f, 0.5f));
+        mBatch.build();
+
+        // x and y are relative to the viewport with y pointing up: left 0, right 0.5, top 1, bottom 0.5
+        float[] expected = {
+                0, 1, 0, 0.25f, 0.5f,
+                0, 0.5f, 0, 0.25f, 0,
+                0.5f, 1, 0, 0.5f, 0.5f,
+                0.5f, 1, 0, 0.5f, 0.5f,
+                0, 0.5f, 0, 0.25f, 0,
+                0.5f, 0.5f, 0, 0.5f, 0,
+        };
+        assertEquals(6, mBatch.getVertexCount());
+        assertArrayEquals(expected, getVertices(), 0.0001f);
+    }
+
+    @Test
+    public void usesTheWholeTextureWithoutTextureRect() {
+        mBatch.reset(VIEWPORT);
+        mBatch.addQuad(0, 1, new RectF(300, 600, 500, 1000), VIEWPORT, null);
+        mBatch.build();
+
+        float[] expected = {
+                0.5f, 0.5f, 0, 0, 1,
+                0.5f, 0, 0, 0, 0,
+                1, 0.5f, 0, 1, 1,
+                1, 0.5f, 0, 1, 1,
+                0.5f, 0, 0, 0, 0,
+                1, 0, 0, 1, 0,
+        };
+        assertArrayEquals(expected, getVertices(), 0.0001f);
+    }
+
+    /* A tile in the given column of the top row of the viewport, so its left x is column / 4. */
+    private void addQuad(int pass, int texture, int column) {
+        float left = VIEWPORT.left + column * 100;
+        mBatch.addQuad(pass, texture, new RectF(left, VIEWPORT.top, left + 100, VIEWPORT.top + 100), VIEWPORT, null);
+    }
+
+    private float getQuadLeft(int index) {
+        return mBatch.getVertices()[index * TileVertexBatch.VERTICES_PER_QUAD * TileVertexBatch.FLOATS_PER_VERTEX];
+    }
+
+    private float[] getVertices() {
+        float[] vertices = new float[mBatch.getVertexCount() * TileVertexBatch.FLOATS_PER_VERTEX];
+        System.arraycopy(mBatch.getVertices(), 0, vertices, 0, vertices.length);
+        return vertices;
+    }
+
+    private void assertDraw(int draw, int texture, int firstVertex, int vertexCount) {
+        assertEquals(texture, mBatch.getDrawTexture(draw));
+        assertEquals(firstVertex, mBatch.getDrawFirstVertex(draw));
+        assertEquals(vertexCount, mBatch.getDrawVertexCount(draw));
+    }
+}